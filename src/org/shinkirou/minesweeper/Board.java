@@ -1,7 +1,9 @@
 package org.shinkirou.minesweeper;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Random;
-import java.util.Stack;
 
 /**
  * A class for minesweeper board.
@@ -13,37 +15,120 @@ public class Board {
 	private int width;
 	private int height;
 	private int mines;
-	private byte[][] values;
-	private boolean[][] probes;
-	private boolean[][] marks;
+	// where the mines are placed from, kept so that rolling back the first
+	// click and probing again places them the same way
+	private long seed;
+	// which squares are around which
+	private Topology topology;
+	// the squares around the square being changed
+	private int[] around;
+	// the squares, stored as y * width + x
+	private byte[] values;
+	private boolean[] probes;
+	private boolean[] marks;
+	// number of unknown squares around each square
+	private byte[] hidden;
+	// the frontier: probed numbers that still have unknown squares around
+	// them, in no particular order
+	private int[] frontier;
+	private int frontierSize;
+	// position of each square in the frontier plus one, or 0 if not in it
+	private int[] frontierIndex;
+	// number of changes made to the squares so far
+	private int modCount;
+	// number of squares neither probed nor marked, of marked mines and of
+	// probed mines, so the state of the game is known without looking
+	private int unknownCount;
+	private int markedMines;
+	private int probedMines;
+
+	// kinds of entries in the undo log
+	private static final int PROBED = 0;
+	private static final int MARKED = 1;
+	private static final int UNMARKED = 2;
+	private static final int INITIALIZED = 3;
+
+	// the undo log: each entry is (y * width + x) << 2 | kind
+	private int[] log;
+	private int logSize;
+	// the log positions and handles of the open snapshots, innermost last
+	private int[] snapshots;
+	private int[] snapshotIds;
+	private int snapshotCount;
+	// the handle of the next snapshot, so no two snapshots share one
+	private int nextSnapshot;
 
 	/**
-	 * Constructs and initializes a new minesweeper board.
+	 * Constructs and initializes a new rectangular minesweeper board.
 	 * @param width The width of the initial board, as an array size unit.
 	 * @param height The height of the initial board, as an array size unit.
 	 * @param mines Number of mines.
 	 */
 	public Board(int width, int height, int mines) {
+		this(new RectangularTopology(width, height), mines);
+	}
+
+	/**
+	 * Constructs and initializes a new minesweeper board of any shape.
+	 * @param topology The shape of the board.
+	 * @param mines Number of mines.
+	 */
+	public Board(Topology topology, int mines) {
+		this(topology, mines, new Random().nextLong());
+	}
+
+	/**
+	 * Constructs and initializes a new minesweeper board whose mines are
+	 * placed from a seed, so the same seed and first probe always give the
+	 * same board.
+	 * @param topology The shape of the board.
+	 * @param mines Number of mines.
+	 * @param seed The seed.
+	 */
+	public Board(Topology topology, int mines, long seed) {
 		firstClick = false;
-		preinit(width, height, mines);
+		this.seed = seed;
+		preinit(topology, mines);
 	}
 
-	private void preinit(int w, int h, int mi) {
+	private void preinit(Topology t, int mi) {
 		// set state variables
-		width = w;
-		height = h;
+		topology = t;
+		width = t.getWidth();
+		height = t.getHeight();
 		mines = mi;
+		around = new int[Topology.MAX_NEIGHBOURS];
 
 		// initialize board
-		values = new byte[height][width];
-		probes = new boolean[height][width];
-		marks = new boolean[height][width];
+		int size = width * height;
+		values = new byte[size];
+		probes = new boolean[size];
+		marks = new boolean[size];
+
+		// every square starts unknown
+		hidden = new byte[size];
+		for (int i = 0; i < size; i ++) {
+			hidden[i] = (byte) t.neighbours(i, around);
+		}
+		frontier = new int[16];
+		frontierSize = 0;
+		frontierIndex = new int[size];
+		unknownCount = size;
+		markedMines = 0;
+		probedMines = 0;
+
+		// no snapshots are open yet
+		log = new int[16];
+		logSize = 0;
+		snapshots = new int[4];
+		snapshotIds = new int[4];
+		snapshotCount = 0;
+		nextSnapshot = 0;
 	}
 
-	private void initialize(int sx, int sy) throws IllegalArgumentException {
-		if (width < 1 || height < 1 || mines < 1) {
-			// cannot initialize arrays with size if width < 1,
-			// height < 1 or mines < 1
+	private void initialize(int start) throws IllegalArgumentException {
+		if (mines < 1) {
+			// cannot initialize the board if mines < 1
 			throw new IllegalArgumentException(
 				"Invalid board configuration: width="
 				+ width + ", height="
@@ -52,65 +137,30 @@ public class Board {
 		} else {
 			label:
 			{
-				Random r = new Random();
+				Random r = new Random(seed);
 				int m = 0;
 				int n = mines;
 				// place some random mines
 				while (m < n) {
 					int x = r.nextInt(width);
 					int y = r.nextInt(height);
+					int i = y * width + x;
 					// make sure it is not an existing mine and not beside the mouse
-					if (values[y][x] != 9 &&
-					    !(x >= sx - 1 && x <= sx + 1 && y >= sy - 1 && y <= sy + 1)) {
+					if (values[i] != 9 && i != start
+					    && ! topology.isNeighbour(start, i)) {
 						// place it
-						values[y][x] = 9;
+						values[i] = 9;
 						m ++;
+						if (marks[i]) {
+							// marked before the first probe
+							markedMines ++;
+						}
 					}
 				}
 			}
 
 			// count the number hints
-			for (int y = 0; y < height; y ++) {
-				for (int x = 0; x < width; x ++) {
-					if (values[y][x] != 9) {
-						byte n = 0;
-						// top-left
-						if (y - 1 > -1 && x - 1 > -1 && values[y - 1][x - 1] == 9) {
-							n ++;
-						}
-						// top
-						if (y - 1 > -1 && values[y - 1][x] == 9) {
-							n ++;
-						}
-						// top-right
-						if (y - 1 > -1 && x + 1 < width && values[y - 1][x + 1] == 9) {
-							n ++;
-						}
-						// mid-left
-						if (x - 1 > -1 && values[y][x - 1] == 9) {
-							n ++;
-						}
-						// mid-right
-						if (x + 1 < width && values[y][x + 1] == 9) {
-							n ++;
-						}
-						// lower-left
-						if (y + 1 < height && x - 1 > -1 && values[y + 1][x - 1] == 9) {
-							n ++;
-						}
-						// lower
-						if (y + 1 < height && values[y + 1][x] == 9) {
-							n ++;
-						}
-						// lower-right
-						if (y + 1 < height && x + 1 < width && values[y + 1][x + 1] == 9) {
-							n ++;
-						}
-						// set number hint
-						values[y][x] = n;
-					}
-				}
-			}
+			HintCounter.count(topology, values);
 		}
 	}
 
@@ -122,116 +172,123 @@ public class Board {
 	 * @param y The Y coordinate of the square, as an array index.
 	 */
 	public void probe(int x, int y) {
+		probe(cell(x, y));
+	}
+
+	/**
+	 * Probes a square. Reveals the value under it.
+	 * May set the board state to solved or failed depends on what is under
+	 * it or if all mines are clicked.
+	 * @param i The cell id of the square, see {@link #cell(int, int)}.
+	 */
+	public void probe(int i) {
+		check(i);
 		if ( ! firstClick) {
-			initialize(x, y);
+			initialize(i);
 			firstClick = true;
+			record(INITIALIZED, i);
 		}
 		// cannot probe marked squares
-		if (marks[y][x]) {
+		if (marks[i]) {
 			return;
 		}
 
 		// probe it
-		probes[y][x] = true;
+		reveal(i);
 
 		// if probed a mine: fail
-		if (values[y][x] == 9) {
+		if (values[i] == 9) {
 			return;
 		} else {
-			if (values[y][x] == 0) {
+			if (values[i] == 0) {
 				// auto-probe squares beside it
 				// the stack that tracks squares to be looked
-				Stack<Coordinate> stack = new Stack<Coordinate>();
-				// push this coordinate
-				stack.push(new Coordinate(x, y));
-				// this is a stack-based flood-fill algorithm
-				while ( ! stack.empty()) {
-					// get coordinates
-					Coordinate i = stack.pop();
-					int sx = i.x;
-					int sy = i.y;
-					probes[sy][sx] = true;
-
-					// look around
-					// top-left
-					if (sy - 1 > -1 && sx - 1 > -1 &&  ! probes[sy - 1][sx - 1]) {
-						if (values[sy - 1][sx - 1] == 0) {
-							// if empty: remember to look ahead for it
-							stack.push(new Coordinate(sx - 1, sy - 1));
-						} else if ( ! marks[sy - 1][sx - 1]) {
-							// if not marked: probe it
-							probes[sy - 1][sx - 1] = true;
-						}
-					}
-					// top
-					if (sy - 1 > -1 &&  ! probes[sy - 1][sx]) {
-						if (values[sy - 1][sx] == 0) {
-							// if empty: remember to look ahead for it
-							stack.push(new Coordinate(sx, sy - 1));
-						} else if ( ! marks[sy][sx]) {
-							// if not marked: probe it
-							probes[sy - 1][sx] = true;
-						}
-					}
-					// top-right
-					if (sy - 1 > -1 && sx + 1 < width &&  ! probes[sy - 1][sx + 1]) {
-						if (values[sy - 1][sx + 1] == 0) {
-							// if empty: remember to look ahead for it
-							stack.push(new Coordinate(sx + 1, sy - 1));
-						} else if ( ! marks[sy - 1][sx + 1]) {
-							// if not marked: probe it
-							probes[sy - 1][sx + 1] = true;
-						}
-					}
-					// mid-left
-					if (sx - 1 > -1 &&  ! probes[sy][sx - 1]) {
-						if (values[sy][sx - 1] == 0) {
-							// if empty: remember to look ahead for it
-							stack.push(new Coordinate(sx - 1, sy));
-						} else if ( ! marks[sy][sx - 1]) {
-							// if not marked: probe it
-							probes[sy][sx - 1] = true;
-						}
-					}
-					// mid-right
-					if (sx + 1 < width &&  ! probes[sy][sx + 1]) {
-						if (values[sy][sx + 1] == 0) {
-							// if empty: remember to look ahead for it
-							stack.push(new Coordinate(sx + 1, sy));
-						} else if ( ! marks[sy][sx + 1]) {
-							// if not marked: probe it
-							probes[sy][sx + 1] = true;
-						}
-					}
-					// lower-left
-					if (sy + 1 < height && sx - 1 > -1 &&  ! probes[sy + 1][sx - 1]) {
-						if (values[sy + 1][sx - 1] == 0) {
-							// if empty: remember to look ahead for it
-							stack.push(new Coordinate(sx - 1, sy + 1));
-						} else if ( ! marks[sy + 1][sx - 1]) {
-							// if not marked: probe it
-							probes[sy + 1][sx - 1] = true;
-						}
-					}
-					// lower
-					if (sy + 1 < height &&  ! probes[sy + 1][sx]) {
-						if (values[sy + 1][sx] == 0) {
-							// if empty: remember to look ahead for it
-							stack.push(new Coordinate(sx, sy + 1));
-						} else if ( ! marks[sy + 1][sx]) {
-							// if not marked: probe it
-							probes[sy + 1][sx] = true;
-						}
-					}
-					// lower-right
-					if (sy + 1 < height && sx + 1 < width &&  ! probes[sy + 1][sx + 1]) {
-						if (values[sy + 1][sx + 1] == 0) {
-							// if empty: remember to look ahead for it
-							stack.push(new Coordinate(sx + 1, sy + 1));
-						} else if ( ! marks[sy + 1][sx + 1]) {
-							// if not marked: probe it
-							probes[sy + 1][sx + 1] = true;
+				int[] stack = new int[16];
+				// push this square
+				stack[0] = i;
+				fill(stack, 1);
+			}
+		}
+	}
+
+	/**
+	 * Probes and marks many squares at once. The mines are marked first,
+	 * then every safe square is probed with a single flood fill, so squares
+	 * shared by several openings are only looked at once.
+	 * @param safe The cell ids of the squares to probe.
+	 * @param mines The cell ids of the squares to mark.
+	 * @return The cell ids of the squares which were probed or marked by
+	 * this call, each one once.
+	 */
+	public int[] apply(int[] safe, int[] mines) {
+		for (int i : safe) {
+			check(i);
+		}
+		for (int i : mines) {
+			check(i);
+		}
+		if ( ! firstClick && safe.length > 0) {
+			initialize(safe[0]);
+			firstClick = true;
+			record(INITIALIZED, safe[0]);
+		}
+		// use the undo log to find out what changed
+		int snapshot = snapshot();
+		int position = logSize;
+		for (int i : mines) {
+			mark(i);
+		}
+		int[] stack = new int[Math.max(16, safe.length)];
+		int top = 0;
+		for (int i : safe) {
+			// cannot probe marked squares
+			if ( ! marks[i] && ! probes[i]) {
+				reveal(i);
+				if (values[i] == 0) {
+					// leave the squares around it to the flood fill
+					stack[top ++] = i;
+				}
+			}
+		}
+		fill(stack, top);
+
+		// each square is in the log at most once
+		int[] changed = new int[logSize - position];
+		for (int j = position; j < logSize; j ++) {
+			changed[j - position] = log[j] >>> 2;
+		}
+		commit(snapshot);
+		return changed;
+	}
+
+	/**
+	 * A stack-based flood-fill algorithm. The squares on the stack are
+	 * probed empty squares, whose squares around them are still to be looked.
+	 */
+	private void fill(int[] stack, int top) {
+		// revealing a square looks around it too
+		int[] next = new int[Topology.MAX_NEIGHBOURS];
+		while (top > 0) {
+			// get the square
+			int i = stack[-- top];
+
+			// look around
+			int n = topology.neighbours(i, next);
+			for (int k = 0; k < n; k ++) {
+				int j = next[k];
+				if ( ! probes[j]) {
+					if (values[j] == 0) {
+						// if empty: remember to look ahead for it
+						reveal(j);
+						if (top == stack.length) {
+							int[] tmp = new int[stack.length * 2];
+							System.arraycopy(stack, 0, tmp, 0, top);
+							stack = tmp;
 						}
+						stack[top ++] = j;
+					} else if ( ! marks[j]) {
+						// if not marked: probe it
+						reveal(j);
 					}
 				}
 			}
@@ -244,10 +301,19 @@ public class Board {
 	 * @param y The Y coordinate of the square, as an array index.
 	 */
 	public void mark(int x, int y) {
+		mark(cell(x, y));
+	}
+
+	/**
+	 * Marks a square mine.
+	 * @param i The cell id of the square, see {@link #cell(int, int)}.
+	 */
+	public void mark(int i) {
+		check(i);
 		// cannot mark probed squares
-		if (!probes[y][x] && !marks[y][x]) {
+		if (!probes[i] && !marks[i]) {
 			// mark it
-			marks[y][x] = true;
+			mark(i, true);
 		}
 	}
 
@@ -257,8 +323,280 @@ public class Board {
 	 * @param y The Y coordinate of the square, as an array index.
 	 */
 	public void unmark(int x, int y) {
-		if (marks[y][x]) {
-			marks[y][x] = false;
+		unmark(cell(x, y));
+	}
+
+	/**
+	 * Un-marks a flag.
+	 * @param i The cell id of the square, see {@link #cell(int, int)}.
+	 */
+	public void unmark(int i) {
+		check(i);
+		if (marks[i]) {
+			mark(i, false);
+		}
+	}
+
+	/**
+	 * Opens a snapshot of the board state. Every change made after this call,
+	 * including the squares revealed by a flood fill, is recorded so that it
+	 * can be reverted with {@link #rollback(int)}. Snapshots may be nested;
+	 * each one must be closed by either {@link #rollback(int)} or
+	 * {@link #commit(int)}.
+	 * @return The handle of the snapshot. No two snapshots of a board get
+	 * the same handle.
+	 */
+	public int snapshot() {
+		if (snapshotCount == snapshots.length) {
+			int[] tmp = new int[snapshots.length * 2];
+			System.arraycopy(snapshots, 0, tmp, 0, snapshotCount);
+			snapshots = tmp;
+			tmp = new int[snapshotIds.length * 2];
+			System.arraycopy(snapshotIds, 0, tmp, 0, snapshotCount);
+			snapshotIds = tmp;
+		}
+		snapshots[snapshotCount] = logSize;
+		snapshotIds[snapshotCount ++] = nextSnapshot;
+		return nextSnapshot ++;
+	}
+
+	/**
+	 * Reverts the board to the state it had when the snapshot was opened,
+	 * and closes the snapshot along with any snapshot opened after it.
+	 * @param snapshot The handle returned by {@link #snapshot()}.
+	 * @throws IllegalStateException If the snapshot is not open.
+	 */
+	public void rollback(int snapshot) throws IllegalStateException {
+		int position = close(snapshot);
+		// undo the changes, most recent first
+		while (logSize > position) {
+			int e = log[-- logSize];
+			int i = e >>> 2;
+			switch (e & 3) {
+				case PROBED:
+					setProbe(i, false);
+					break;
+				case MARKED:
+					setMark(i, false);
+					break;
+				case UNMARKED:
+					setMark(i, true);
+					break;
+				case INITIALIZED:
+					// forget the mines, the next probe places them again from
+					// the seed
+					for (int j = 0; j < values.length; j ++) {
+						values[j] = 0;
+					}
+					markedMines = 0;
+					firstClick = false;
+					break;
+			}
+		}
+		if (snapshotCount == 0) {
+			logSize = 0;
+		}
+	}
+
+	/**
+	 * Keeps the changes made since the snapshot was opened, and closes the
+	 * snapshot along with any snapshot opened after it. The changes can still
+	 * be reverted by rolling back an enclosing snapshot.
+	 * @param snapshot The handle returned by {@link #snapshot()}.
+	 * @throws IllegalStateException If the snapshot is not open.
+	 */
+	public void commit(int snapshot) throws IllegalStateException {
+		close(snapshot);
+		if (snapshotCount == 0) {
+			// nothing can be reverted anymore
+			logSize = 0;
+		}
+	}
+
+	/**
+	 * Closes a snapshot and the snapshots opened after it.
+	 * @return The log position of the snapshot.
+	 */
+	private int close(int snapshot) throws IllegalStateException {
+		int n = snapshotCount;
+		while (n > 0 && snapshotIds[n - 1] != snapshot) {
+			n --;
+		}
+		if (n == 0) {
+			throw new IllegalStateException(
+				"Snapshot " + snapshot + " is not open.");
+		}
+		snapshotCount = n - 1;
+		return snapshots[n - 1];
+	}
+
+	private void check(int i) throws ArrayIndexOutOfBoundsException {
+		if (i < 0 || i >= values.length) {
+			throw new ArrayIndexOutOfBoundsException(
+				"Cell out of bounds: " + i + ".");
+		}
+	}
+
+	private void reveal(int i) {
+		if ( ! probes[i]) {
+			setProbe(i, true);
+			record(PROBED, i);
+		}
+	}
+
+	private void mark(int i, boolean mark) {
+		setMark(i, mark);
+		record(mark ? MARKED : UNMARKED, i);
+	}
+
+	private void setProbe(int i, boolean probe) {
+		boolean wasUnknown = ! probes[i] && ! marks[i];
+		if (values[i] == 9 && probes[i] != probe) {
+			probedMines += probe ? 1 : -1;
+		}
+		probes[i] = probe;
+		changed(i, wasUnknown);
+	}
+
+	private void setMark(int i, boolean mark) {
+		boolean wasUnknown = ! probes[i] && ! marks[i];
+		if (values[i] == 9 && marks[i] != mark) {
+			markedMines += mark ? 1 : -1;
+		}
+		marks[i] = mark;
+		changed(i, wasUnknown);
+	}
+
+	private void changed(int i, boolean wasUnknown) {
+		modCount ++;
+		boolean unknown = ! probes[i] && ! marks[i];
+		if (unknown != wasUnknown) {
+			unknownCount += unknown ? 1 : -1;
+			// tell the squares around it
+			int n = topology.neighbours(i, around);
+			for (int k = 0; k < n; k ++) {
+				int j = around[k];
+				hidden[j] += unknown ? 1 : -1;
+				updateFrontier(j);
+			}
+		}
+		updateFrontier(i);
+	}
+
+	private void updateFrontier(int i) {
+		boolean in = probes[i] && ! marks[i] && values[i] > 0
+			&& values[i] < 9 && hidden[i] > 0;
+		if (in && frontierIndex[i] == 0) {
+			// add it to the end
+			if (frontierSize == frontier.length) {
+				int[] tmp = new int[frontier.length * 2];
+				System.arraycopy(frontier, 0, tmp, 0, frontierSize);
+				frontier = tmp;
+			}
+			frontier[frontierSize ++] = i;
+			frontierIndex[i] = frontierSize;
+		} else if ( ! in && frontierIndex[i] != 0) {
+			// move the last one into its place
+			int last = frontier[-- frontierSize];
+			frontier[frontierIndex[i] - 1] = last;
+			frontierIndex[last] = frontierIndex[i];
+			frontierIndex[i] = 0;
+		}
+	}
+
+	private void record(int kind, int i) {
+		// only keep a log while it can be rolled back
+		if (snapshotCount == 0) {
+			return;
+		}
+		if (logSize == log.length) {
+			int[] tmp = new int[log.length * 2];
+			System.arraycopy(log, 0, tmp, 0, logSize);
+			log = tmp;
+		}
+		log[logSize ++] = i << 2 | kind;
+	}
+
+	/**
+	 * Writes the squares for a {@link Checkpoint}: whether the mines are
+	 * placed, the values packed two to a byte, then which squares are probed
+	 * and which are marked, a bit each.
+	 * @param out Where to write them.
+	 * @throws IllegalStateException If a snapshot is open, since the undo
+	 * log is not written.
+	 */
+	void write(DataOutput out) throws IOException, IllegalStateException {
+		if (snapshotCount > 0) {
+			throw new IllegalStateException(
+				"Cannot write the board while a snapshot is open.");
+		}
+		out.writeBoolean(firstClick);
+		byte[] packed = new byte[(values.length + 1) / 2];
+		for (int i = 0; i < values.length; i ++) {
+			packed[i >> 1] |= values[i] << ((i & 1) << 2);
+		}
+		out.write(packed);
+		out.write(pack(probes));
+		out.write(pack(marks));
+	}
+
+	/**
+	 * Reads the squares written by {@link #write(DataOutput)} into a board
+	 * which has not been played yet. The unknown squares around each square
+	 * and the frontier are worked out again in a single pass.
+	 * @param in Where to read them from.
+	 * @throws IOException If the squares cannot be read or are not valid.
+	 */
+	void read(DataInput in) throws IOException {
+		firstClick = in.readBoolean();
+		byte[] packed = new byte[(values.length + 1) / 2];
+		in.readFully(packed);
+		for (int i = 0; i < values.length; i ++) {
+			values[i] = (byte) (packed[i >> 1] >> ((i & 1) << 2) & 15);
+			if (values[i] > 9) {
+				throw new IOException("Invalid value " + values[i]
+					+ " at cell " + i + ".");
+			}
+		}
+		unpack(in, probes);
+		unpack(in, marks);
+
+		// tell the squares around each known square, and count them
+		for (int i = 0; i < values.length; i ++) {
+			if (values[i] == 9) {
+				markedMines += marks[i] ? 1 : 0;
+				probedMines += probes[i] ? 1 : 0;
+			}
+			if (probes[i] || marks[i]) {
+				unknownCount --;
+				int n = topology.neighbours(i, around);
+				for (int k = 0; k < n; k ++) {
+					hidden[around[k]] --;
+				}
+			}
+		}
+		for (int i = 0; i < values.length; i ++) {
+			updateFrontier(i);
+		}
+		modCount ++;
+	}
+
+	private static byte[] pack(boolean[] bits) {
+		byte[] packed = new byte[(bits.length + 7) / 8];
+		for (int i = 0; i < bits.length; i ++) {
+			if (bits[i]) {
+				packed[i >> 3] |= 1 << (i & 7);
+			}
+		}
+		return packed;
+	}
+
+	private static void unpack(DataInput in, boolean[] bits)
+			throws IOException {
+		byte[] packed = new byte[(bits.length + 7) / 8];
+		in.readFully(packed);
+		for (int i = 0; i < bits.length; i ++) {
+			bits[i] = (packed[i >> 3] & 1 << (i & 7)) != 0;
 		}
 	}
 
@@ -274,10 +612,19 @@ public class Board {
 	 * </ul>
 	 */
 	public byte getValue(int x, int y) {
-		if (marks[y][x]) {
+		return getValue(cell(x, y));
+	}
+
+	/**
+	 * Gets the value of a square.
+	 * @param i The cell id of the square, see {@link #cell(int, int)}.
+	 * @return The state of the square, as {@link #getValue(int, int)}.
+	 */
+	public byte getValue(int i) {
+		if (marks[i]) {
 			// square is marked
 			return 2;
-		} else if (probes[y][x]) {
+		} else if (probes[i]) {
 			// square is probed
 			return 1;
 		} else {
@@ -298,11 +645,20 @@ public class Board {
 	 * </ul>
 	 */
 	public byte getInformation(int x, int y) {
-		if (marks[y][x]) {
+		return getInformation(cell(x, y));
+	}
+
+	/**
+	 * Gets the number value of a square, for displaying and solving.
+	 * @param i The cell id of the square, see {@link #cell(int, int)}.
+	 * @return The value of the square, as {@link #getInformation(int, int)}.
+	 */
+	public byte getInformation(int i) {
+		if (marks[i]) {
 			// square is marked
 			return 9;
-		} else if (probes[y][x]) {
-			return values[y][x];
+		} else if (probes[i]) {
+			return values[i];
 		} else {
 			// square is unknown
 			return 10;
@@ -332,10 +688,11 @@ public class Board {
 		for (int y = 0; y < height; y ++) {
 			buf += y % 10 + "|";
 			for (int x = 0; x < width; x ++) {
-				if (marks[y][x]) {
+				int i = y * width + x;
+				if (marks[i]) {
 					buf += "#";
-				} else if (probes[y][x]) {
-					buf += values[y][x] == 9 ? "*" : values[y][x];
+				} else if (probes[i]) {
+					buf += values[i] == 9 ? "*" : values[i];
 				} else {
 					buf += " ";
 				}
@@ -346,6 +703,56 @@ public class Board {
 		return buf;
 	}
 
+	/**
+	 * Gets the cell id of a square. Cell ids are the cheap way to refer to
+	 * squares: they run from 0 to {@link #size()} - 1, row by row.
+	 * @param x The X coordinate of the square, as an array index.
+	 * @param y The Y coordinate of the square, as an array index.
+	 * @return The cell id, <code>y * width + x</code>.
+	 */
+	public int cell(int x, int y) throws ArrayIndexOutOfBoundsException {
+		if (x < 0 || x >= width || y < 0 || y >= height) {
+			throw new ArrayIndexOutOfBoundsException(
+				"Coordinate out of bounds: " + x + ", " + y + ".");
+		}
+		return y * width + x;
+	}
+
+	/**
+	 * Gets the X coordinate of a square.
+	 * @param i The cell id of the square.
+	 * @return The X coordinate, as an array index.
+	 */
+	public int getX(int i) {
+		return i % width;
+	}
+
+	/**
+	 * Gets the Y coordinate of a square.
+	 * @param i The cell id of the square.
+	 * @return The Y coordinate, as an array index.
+	 */
+	public int getY(int i) {
+		return i / width;
+	}
+
+	/**
+	 * Gets the coordinate of a square, for display.
+	 * @param i The cell id of the square.
+	 * @return A new coordinate.
+	 */
+	public Coordinate getCoordinate(int i) {
+		return new Coordinate(i % width, i / width);
+	}
+
+	/**
+	 * Gets the number of squares.
+	 * @return The number of squares.
+	 */
+	public int size() {
+		return values.length;
+	}
+
 	public int getWidth() {
 		return width;
 	}
@@ -358,52 +765,94 @@ public class Board {
 		return mines;
 	}
 
+	/**
+	 * Gets the seed the mines are placed from, on the first probe.
+	 * @return The seed.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Gets the shape of the board.
+	 * @return The topology.
+	 */
+	public Topology getTopology() {
+		return topology;
+	}
+
+	/**
+	 * Gets a copy of the values under the squares.
+	 * @return The values, indexed by Y and then X.
+	 */
 	public byte[][] getValues() {
-		return values;
+		byte[][] a = new byte[height][width];
+		for (int y = 0; y < height; y ++) {
+			System.arraycopy(values, y * width, a[y], 0, width);
+		}
+		return a;
 	}
 
+	/**
+	 * Gets a copy of which squares are probed.
+	 * @return The probes, indexed by Y and then X.
+	 */
 	public boolean[][] getProbes() {
-		return probes;
+		return unflatten(probes);
 	}
 
+	/**
+	 * Gets a copy of which squares are marked.
+	 * @return The marks, indexed by Y and then X.
+	 */
 	public boolean[][] getMarks() {
-		return marks;
+		return unflatten(marks);
 	}
 
-	public boolean isSolved() {
-		if ( ! firstClick) {
-			return false;
-		}
-		int n = 0;
-		// count the marked squares
+	private boolean[][] unflatten(boolean[] flat) {
+		boolean[][] a = new boolean[height][width];
 		for (int y = 0; y < height; y ++) {
-			for (int x = 0; x < width; x ++) {
-				if (marks[y][x] && values[y][x] == 9) {
-					// a marked square and a mine under it
-					n ++;
-				} else if ( ! probes[y][x] &&  ! marks[y][x]) {
-					// if a square is unprobed and unmarked, not solved
-					return false;
-				}
-			}
+			System.arraycopy(flat, y * width, a[y], 0, width);
 		}
-		// set solved to true if the marked squares equals the number of mines
-		return n == mines;
+		return a;
+	}
+
+	/**
+	 * Gets the number of changes made to the squares so far. It can be used
+	 * to tell whether the board was changed since it was last looked at.
+	 * @return The modification count.
+	 */
+	public int getModCount() {
+		return modCount;
+	}
+
+	/**
+	 * Gets the frontier of the board: the probed number squares that still
+	 * have unknown squares around them. It is kept up to date as squares are
+	 * probed, marked and un-marked, so it costs nothing to find.
+	 * @return The cell ids of the frontier squares, in no particular order.
+	 */
+	public int[] getFrontier() {
+		int[] a = new int[frontierSize];
+		System.arraycopy(frontier, 0, a, 0, frontierSize);
+		return a;
 	}
 
+	/**
+	 * Checks if every square is probed or marked, and every mine is marked.
+	 * The squares are counted as they change, so this takes constant time.
+	 * @return True if the board is solved.
+	 */
+	public boolean isSolved() {
+		return firstClick && unknownCount == 0 && markedMines == mines;
+	}
+
+	/**
+	 * Checks if a mine was probed. The probed mines are counted as they
+	 * change, so this takes constant time.
+	 * @return True if the board is failed.
+	 */
 	public boolean isFailed() {
-		if ( ! firstClick) {
-			return false;
-		}
-		// loop through all squares
-		for (int y = 0; y < height; y ++) {
-			for (int x = 0; x < width; x ++) {
-				// fail if probed a mine
-				if (probes[y][x] && values[y][x] == 9) {
-					return true;
-				}
-			}
-		}
-		return false;
+		return firstClick && probedMines > 0;
 	}
 }
@@ -0,0 +1,193 @@
+package org.shinkirou.minesweeper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Saves a solver and its board to a compact binary checkpoint, and resumes
+ * from one. Loading a checkpoint is linear in the size of the board, so it
+ * is much quicker than finding the constraints again with the subset rule.
+ * <p>
+ * The format is, in order: the magic number, the format version, the shape
+ * of the board, its width and height, the number of mines, the seed the
+ * mines are placed from, the squares (see {@link Board}) and the solver
+ * state (see {@link MinesweeperSolver}). Most numbers are written as
+ * variable length integers, 7 bits to a byte; the seed is written in full,
+ * so a board saved before its first probe resumes as the same board.
+ * <p>
+ * The sampler settings are not part of the checkpoint; a resumed solver
+ * starts with the default ones.
+ * @author SHiNKiROU
+ */
+public class Checkpoint {
+
+	private static final int MAGIC = 0x4D534350; // "MSCP"
+	private static final int VERSION = 2;
+
+	// the shapes of board
+	private static final int RECTANGULAR = 0;
+	private static final int TORUS = 1;
+	private static final int HEXAGONAL = 2;
+
+	private Checkpoint() {
+	}
+
+	/**
+	 * Saves a solver and its board.
+	 * @param solver The solver.
+	 * @param out Where to write the checkpoint. It is flushed, not closed.
+	 * @throws IOException If the checkpoint cannot be written.
+	 * @throws IllegalStateException If a snapshot of the board is open.
+	 * @throws IllegalArgumentException If the board is of a shape the
+	 * format does not know.
+	 */
+	public static void save(MinesweeperSolver solver, OutputStream out)
+			throws IOException, IllegalStateException,
+			       IllegalArgumentException {
+		Board board = solver.getBoard();
+		Topology t = board.getTopology();
+		int shape;
+		if (t instanceof RectangularTopology) {
+			shape = RECTANGULAR;
+		} else if (t instanceof TorusTopology) {
+			shape = TORUS;
+		} else if (t instanceof HexagonalTopology) {
+			shape = HEXAGONAL;
+		} else {
+			throw new IllegalArgumentException(
+				"Cannot save a board of shape " + t.getClass().getName() + ".");
+		}
+
+		DataOutputStream data = new DataOutputStream(
+			new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+		data.writeByte(shape);
+		writeVarint(data, board.getWidth());
+		writeVarint(data, board.getHeight());
+		writeVarint(data, board.getMines());
+		data.writeLong(board.getSeed());
+		board.write(data);
+		solver.write(data);
+		data.flush();
+	}
+
+	/**
+	 * Saves a solver and its board to a file. The checkpoint is written to a
+	 * temporary file next to it first, so a crash while saving leaves the
+	 * last checkpoint as it was.
+	 * @param solver The solver.
+	 * @param file The file.
+	 * @throws IOException If the checkpoint cannot be written.
+	 */
+	public static void save(MinesweeperSolver solver, File file)
+			throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tmp);
+		try {
+			save(solver, out);
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		// renaming over an existing file fails on some platforms
+		if ( ! tmp.renameTo(file) && ! (file.delete() && tmp.renameTo(file))) {
+			throw new IOException("Cannot rename " + tmp + " to " + file + ".");
+		}
+	}
+
+	/**
+	 * Resumes a solver and its board from a checkpoint.
+	 * @param in Where to read the checkpoint from. It is not closed.
+	 * @return The solver; its board is {@link MinesweeperSolver#getBoard()}.
+	 * @throws IOException If the checkpoint cannot be read or is not valid.
+	 */
+	public static MinesweeperSolver load(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(
+			new BufferedInputStream(in));
+		if (data.readInt() != MAGIC) {
+			throw new IOException("Not a checkpoint.");
+		}
+		int version = data.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unknown checkpoint version " + version + ".");
+		}
+		int shape = data.readUnsignedByte();
+		int width = readVarint(data);
+		int height = readVarint(data);
+		int mines = readVarint(data);
+		long seed = data.readLong();
+		Topology t;
+		try {
+			switch (shape) {
+				case RECTANGULAR:
+					t = new RectangularTopology(width, height);
+					break;
+				case TORUS:
+					t = new TorusTopology(width, height);
+					break;
+				case HEXAGONAL:
+					t = new HexagonalTopology(width, height);
+					break;
+				default:
+					throw new IOException("Unknown board shape " + shape + ".");
+			}
+		} catch (IllegalArgumentException ex) {
+			// the size is not one a board can have
+			IOException e = new IOException(ex.getMessage());
+			e.initCause(ex);
+			throw e;
+		}
+
+		Board board = new Board(t, mines, seed);
+		board.read(data);
+		MinesweeperSolver solver = new MinesweeperSolver(board);
+		solver.read(data);
+		return solver;
+	}
+
+	/**
+	 * Resumes a solver and its board from a checkpoint file.
+	 * @param file The file.
+	 * @return The solver.
+	 * @throws IOException If the checkpoint cannot be read or is not valid.
+	 */
+	public static MinesweeperSolver load(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			return load(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	static void writeVarint(DataOutput out, int n) throws IOException {
+		while ((n & ~0x7F) != 0) {
+			out.writeByte(n & 0x7F | 0x80);
+			n >>>= 7;
+		}
+		out.writeByte(n);
+	}
+
+	static int readVarint(DataInput in) throws IOException {
+		int n = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			n |= (b & 0x7F) << shift;
+			if (b < 0x80) {
+				return n;
+			}
+		}
+		throw new IOException("Invalid variable length integer.");
+	}
+}
@@ -0,0 +1,195 @@
+package org.shinkirou.minesweeper;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of solved frontier components, shared between solvers so
+ * that a component seen in one game is not solved again in the next. A
+ * component is keyed by its canonical form: its constraints, with the
+ * squares numbered in an order that does not change when the component is
+ * moved, turned or mirrored. The least recently used components are thrown
+ * away first, when there are too many or they take too much memory.
+ * <p>
+ * The cache can be used by many threads at once.
+ * @author SHiNKiROU
+ */
+public class ComponentCache {
+
+	private int maxEntries;
+	private long maxBytes;
+	private LinkedHashMap<Key, Solution> map;
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Constructs a cache of at most 4096 components or 16 megabytes.
+	 */
+	public ComponentCache() {
+		this(4096, 16L << 20);
+	}
+
+	/**
+	 * Constructs a cache.
+	 * @param maxEntries The most components to keep.
+	 * @param maxBytes The most memory to use, roughly, in bytes.
+	 */
+	public ComponentCache(int maxEntries, long maxBytes) {
+		if (maxEntries < 1 || maxBytes < 1) {
+			throw new IllegalArgumentException("Invalid cache size: "
+				+ maxEntries + " entries, " + maxBytes + " bytes.");
+		}
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		// in access order, least recently used first
+		this.map = new LinkedHashMap<Key, Solution>(16, 0.75f, true);
+	}
+
+	synchronized Solution get(Key key) {
+		Solution s = map.get(key);
+		if (s == null) {
+			misses ++;
+		} else {
+			hits ++;
+		}
+		return s;
+	}
+
+	synchronized void put(Key key, Solution s) {
+		Solution old = map.put(key, s);
+		if (old != null) {
+			bytes -= size(key, old);
+		}
+		bytes += size(key, s);
+		Iterator<Map.Entry<Key, Solution>> it = map.entrySet().iterator();
+		while ((map.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+			Map.Entry<Key, Solution> e = it.next();
+			bytes -= size(e.getKey(), e.getValue());
+			it.remove();
+			evictions ++;
+		}
+	}
+
+	private static long size(Key key, Solution s) {
+		// the arrays, their headers and the map entry
+		return 4L * key.data.length + s.bytes() + 96;
+	}
+
+	/**
+	 * Throws away every component, and the counts of hits and misses.
+	 */
+	public synchronized void clear() {
+		map.clear();
+		bytes = 0;
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	/**
+	 * Gets the number of components in the cache.
+	 * @return The number of components.
+	 */
+	public synchronized int size() {
+		return map.size();
+	}
+
+	/**
+	 * Gets roughly how much memory the components take.
+	 * @return The memory in bytes.
+	 */
+	public synchronized long getMemory() {
+		return bytes;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Gets the number of components thrown away to make room.
+	 * @return The number of evictions.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Gets the fraction of lookups which found the component.
+	 * @return The hit rate, from 0 to 1, or 0 if nothing was looked up.
+	 */
+	public synchronized double getHitRate() {
+		long n = hits + misses;
+		return n == 0 ? 0 : (double) hits / n;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return map.size() + " components, " + Math.round(bytes / 1024.0)
+			+ " KB, " + hits + " hits, " + misses + " misses ("
+			+ Math.round(getHitRate() * 1000) / 10.0 + "% hit rate), "
+			+ evictions + " evictions";
+	}
+
+	/**
+	 * The canonical form of a component: the number of squares, the number
+	 * of constraints, then each constraint as its number of mines, its number
+	 * of squares and the squares.
+	 */
+	static final class Key {
+		final int[] data;
+		private final int hash;
+
+		Key(int[] data) {
+			this.data = data;
+			this.hash = Arrays.hashCode(data);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && hash == ((Key) obj).hash
+				&& Arrays.equals(data, ((Key) obj).data);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * The solutions of a component, counted by the number of mines in them,
+	 * in terms of the squares of its {@link Key}. The counts do not depend on
+	 * the rest of the board, so they are right for any game.
+	 */
+	static final class Solution {
+		// the number of squares
+		final int cells;
+		// the number of solutions with k mines, or null if it was too big
+		final long[] counts;
+		// the number of those with a mine on square i, at k * cells + i
+		final long[] hits;
+
+		Solution(int cells, long[] counts, long[] hits) {
+			this.cells = cells;
+			this.counts = counts;
+			this.hits = hits;
+		}
+
+		boolean isTooBig() {
+			return counts == null;
+		}
+
+		long bytes() {
+			return counts == null ? 0 : 8L * (counts.length + hits.length) + 32;
+		}
+	}
+}
@@ -0,0 +1,464 @@
+package org.shinkirou.minesweeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import org.shinkirou.util.UnionFind;
+
+/**
+ * Works out the exact chance of each unknown square being a mine. The
+ * constraints are split into components which share no squares, the
+ * solutions of each component are counted by the number of mines in them,
+ * and the counts are put together with the number of ways to place the
+ * mines left on the other unknown squares.
+ * <p>
+ * The counts of a component are looked up in a {@link ComponentCache}
+ * first, by its canonical form, so a component seen before is not counted
+ * again.
+ * @author SHiNKiROU
+ */
+class ComponentSolver {
+
+	// the biggest component that is counted
+	static final int MAX_CELLS = 40;
+	// how many partial solutions may be looked at to count a component
+	static final int MAX_NODES = 1 << 20;
+
+	// orders the constraints of a canonical form
+	private static final Comparator<int[]> LEXICOGRAPHIC =
+		new Comparator<int[]>() {
+			public int compare(int[] a, int[] b) {
+				return ComponentSolver.compare(a, b);
+			}
+		};
+
+	private ComponentSolver() {
+	}
+
+	/**
+	 * Works out the exact chances of mines.
+	 * @param board The board.
+	 * @param constraints The constraints found on the board. Constraints
+	 * derived from others are not needed, and make fewer components match.
+	 * @param cache Where to look up the components, or null.
+	 * @param deadline When to give up, as a {@link System#nanoTime()} value.
+	 * The components counted by then are still put in the cache.
+	 * @return The estimate, with no error, or null if a component is too
+	 * big to count, the deadline passed or the constraints have no solution.
+	 */
+	static ProbabilityEstimate estimate(Board board,
+	                                    Collection<Constraint> constraints,
+	                                    ComponentCache cache, long deadline) {
+		// number the squares in the constraints, in ascending order
+		Constraint[] list = new HashSet<Constraint>(constraints)
+			.toArray(new Constraint[0]);
+		Frontier frontier = new Frontier(board, Arrays.asList(list));
+		int[] cells = frontier.cells;
+		int size = cells.length;
+
+		// 1: split the constraints into components
+		UnionFind joined = new UnionFind(size);
+		for (Constraint e : list) {
+			int first = frontier.index(e.getCells()[0]);
+			for (int c : e.getCells()) {
+				joined.union(first, frontier.index(c));
+			}
+		}
+		int[] ids = new int[size];
+		Arrays.fill(ids, -1);
+		int count = 0;
+		for (int i = 0; i < size; i ++) {
+			int root = joined.find(i);
+			if (ids[root] < 0) {
+				ids[root] = count ++;
+			}
+		}
+		int[][] members = new int[count][];
+		int[] sizes = new int[count];
+		for (int i = 0; i < size; i ++) {
+			sizes[ids[joined.find(i)]] ++;
+		}
+		for (int c = 0; c < count; c ++) {
+			members[c] = new int[sizes[c]];
+			sizes[c] = 0;
+		}
+		for (int i = 0; i < size; i ++) {
+			int c = ids[joined.find(i)];
+			members[c][sizes[c] ++] = cells[i];
+		}
+		List<List<Constraint>> groups = new ArrayList<List<Constraint>>(count);
+		for (int c = 0; c < count; c ++) {
+			groups.add(new ArrayList<Constraint>());
+		}
+		for (Constraint e : list) {
+			int i = frontier.index(e.getCells()[0]);
+			groups.get(ids[joined.find(i)]).add(e);
+		}
+
+		// 2: count the solutions of each component, if none is too big
+		for (int c = 0; c < count; c ++) {
+			if (members[c].length > MAX_CELLS) {
+				return null;
+			}
+		}
+		ComponentCache.Solution[] solutions = new ComponentCache.Solution[count];
+		int[][] orders = new int[count][];
+		for (int c = 0; c < count; c ++) {
+			if (System.nanoTime() > deadline) {
+				return null;
+			}
+			orders[c] = new int[members[c].length];
+			ComponentCache.Key key = new ComponentCache.Key(canonical(
+				board.getWidth(), members[c], groups.get(c), orders[c]));
+			ComponentCache.Solution s = cache == null ? null : cache.get(key);
+			if (s == null) {
+				s = count(key.data, deadline);
+				if (s == null) {
+					// out of time, which says nothing about the component
+					return null;
+				}
+				if (cache != null) {
+					cache.put(key, s);
+				}
+			}
+			if (s.isTooBig()) {
+				return null;
+			}
+			solutions[c] = s;
+		}
+
+		// 3: the mines left and the unknown squares outside the constraints
+		int left = frontier.left;
+		int others = frontier.others;
+
+		// 4: put the components together. ways[s] is the number of ways to
+		// place the mines left on the others when the components hold s
+		// mines, scaled so the biggest is 1
+		double[] logFactorials = frontier.logFactorials();
+		double[] ways = new double[size + 1];
+		double max = Double.NEGATIVE_INFINITY;
+		for (int s = 0; s <= size; s ++) {
+			int rest = left - s;
+			ways[s] = rest < 0 || rest > others ? Double.NEGATIVE_INFINITY
+				: logFactorials[others] - logFactorials[rest]
+				  - logFactorials[others - rest];
+			max = Math.max(max, ways[s]);
+		}
+		if (max == Double.NEGATIVE_INFINITY) {
+			return null;
+		}
+		for (int s = 0; s <= size; s ++) {
+			ways[s] = Math.exp(ways[s] - max);
+		}
+		// the counts of each component, scaled so the biggest is 1; a
+		// component's scale cancels out of its chances
+		double[][] counts = new double[count][];
+		for (int c = 0; c < count; c ++) {
+			long[] n = solutions[c].counts;
+			double top = 0;
+			for (long v : n) {
+				top = Math.max(top, v);
+			}
+			if (top == 0) {
+				return null;
+			}
+			counts[c] = new double[n.length];
+			for (int k = 0; k < n.length; k ++) {
+				counts[c][k] = n[k] / top;
+			}
+		}
+		// after[c][x]: the weight of the components from c on and the others,
+		// when the components before c hold x mines
+		double[][] after = new double[count + 1][];
+		after[count] = ways;
+		for (int c = count - 1; c >= 0; c --) {
+			after[c] = new double[size + 1];
+			for (int x = 0; x <= size; x ++) {
+				double sum = 0;
+				for (int k = 0; k < counts[c].length && x + k <= size; k ++) {
+					sum += counts[c][k] * after[c + 1][x + k];
+				}
+				after[c][x] = sum;
+			}
+		}
+		double weight = after[0][0];
+		if ( ! (weight > 0)) {
+			return null;
+		}
+
+		// before[x]: the weight of the components before c, holding x mines
+		double[] before = new double[size + 1];
+		before[0] = 1;
+		double[] probabilities = new double[size];
+		long samples = 0;
+		for (int c = 0; c < count; c ++) {
+			ComponentCache.Solution s = solutions[c];
+			int n = s.cells;
+			double top = 0;
+			for (long v : s.counts) {
+				top = Math.max(top, v);
+			}
+			for (int k = 0; k < s.counts.length; k ++) {
+				// the weight of everything else when this one holds k mines
+				double r = 0;
+				for (int x = 0; x + k <= size; x ++) {
+					r += before[x] * after[c + 1][x + k];
+				}
+				r /= top * weight;
+				for (int i = 0; i < n; i ++) {
+					int cell = frontier.index(orders[c][i]);
+					probabilities[cell] += s.hits[k * n + i] * r;
+				}
+			}
+			samples += total(s.counts);
+			double[] next = new double[size + 1];
+			for (int x = 0; x <= size; x ++) {
+				if (before[x] != 0) {
+					for (int k = 0; k < counts[c].length && x + k <= size; k ++) {
+						next[x + k] += before[x] * counts[c][k];
+					}
+				}
+			}
+			before = next;
+		}
+		double expected = 0;
+		for (int s = 0; s <= size; s ++) {
+			expected += before[s] * ways[s] * (left - s);
+		}
+		double otherProbability = others == 0 ? 0 : expected / weight / others;
+
+		return new ProbabilityEstimate(cells, probabilities, new double[size],
+			frontier.other, otherProbability, 0, samples, true);
+	}
+
+	private static long total(long[] counts) {
+		long sum = 0;
+		for (long n : counts) {
+			sum += n;
+		}
+		return sum;
+	}
+
+	/**
+	 * Finds the canonical form of a component: of the eight ways to turn and
+	 * mirror it, moved so its corner is at 0, 0, the one whose squares,
+	 * numbered row by row, give the smallest list of constraints.
+	 * @param width The width of the board.
+	 * @param cells The squares of the component, in ascending order.
+	 * @param constraints The constraints of the component.
+	 * @param order Where to put the square of each number in the form.
+	 * @return The canonical form.
+	 */
+	private static int[] canonical(int width, int[] cells,
+	                               List<Constraint> constraints, int[] order) {
+		int n = cells.length;
+		int[] best = null;
+		int[] a = new int[n];
+		int[] b = new int[n];
+		long[] sorted = new long[n];
+		int[] number = new int[n];
+		int[][] encoded = new int[constraints.size()][];
+		for (int t = 0; t < 8; t ++) {
+			// turn and mirror the squares
+			int minA = Integer.MAX_VALUE;
+			int minB = Integer.MAX_VALUE;
+			for (int i = 0; i < n; i ++) {
+				int x = cells[i] % width;
+				int y = cells[i] / width;
+				a[i] = (t & 4) != 0 ? y : x;
+				b[i] = (t & 4) != 0 ? x : y;
+				if ((t & 1) != 0) {
+					a[i] = -a[i];
+				}
+				if ((t & 2) != 0) {
+					b[i] = -b[i];
+				}
+				minA = Math.min(minA, a[i]);
+				minB = Math.min(minB, b[i]);
+			}
+			// number them row by row
+			for (int i = 0; i < n; i ++) {
+				long position = (long) (b[i] - minB) << 31 | (a[i] - minA);
+				sorted[i] = position << 6 | i;
+			}
+			Arrays.sort(sorted);
+			for (int k = 0; k < n; k ++) {
+				number[(int) (sorted[k] & 63)] = k;
+			}
+			// the constraints in terms of the numbers
+			int length = 2;
+			for (int j = 0; j < encoded.length; j ++) {
+				Constraint e = constraints.get(j);
+				int[] code = new int[e.size() + 2];
+				code[0] = e.getMines();
+				code[1] = e.size();
+				int m = 2;
+				for (int c : e.getCells()) {
+					code[m ++] = number[Arrays.binarySearch(cells, c)];
+				}
+				Arrays.sort(code, 2, code.length);
+				encoded[j] = code;
+				length += code.length;
+			}
+			Arrays.sort(encoded, LEXICOGRAPHIC);
+			int[] form = new int[length];
+			form[0] = n;
+			form[1] = encoded.length;
+			int m = 2;
+			for (int[] code : encoded) {
+				System.arraycopy(code, 0, form, m, code.length);
+				m += code.length;
+			}
+			if (best == null || compare(form, best) < 0) {
+				best = form;
+				for (int k = 0; k < n; k ++) {
+					order[k] = cells[(int) (sorted[k] & 63)];
+				}
+			}
+		}
+		return best;
+	}
+
+	private static int compare(int[] a, int[] b) {
+		for (int i = 0; i < a.length && i < b.length; i ++) {
+			if (a[i] != b[i]) {
+				return a[i] < b[i] ? -1 : 1;
+			}
+		}
+		return a.length - b.length;
+	}
+
+	/**
+	 * Counts the solutions of a component from its canonical form, trying
+	 * the squares in order and backing off as soon as a constraint cannot be
+	 * met anymore.
+	 * @return The solutions, or null if the deadline passed first.
+	 */
+	static ComponentCache.Solution count(int[] form, long deadline) {
+		Counter counter = new Counter(form, deadline);
+		if ( ! counter.run(0)) {
+			return counter.late ? null
+				: new ComponentCache.Solution(counter.n, null, null);
+		}
+		// keep only up to the most mines a solution has
+		int n = counter.n;
+		int k = n;
+		while (k > 0 && counter.counts[k] == 0) {
+			k --;
+		}
+		long[] counts = new long[k + 1];
+		long[] hits = new long[(k + 1) * n];
+		System.arraycopy(counter.counts, 0, counts, 0, counts.length);
+		System.arraycopy(counter.hits, 0, hits, 0, hits.length);
+		return new ComponentCache.Solution(n, counts, hits);
+	}
+
+	private static final class Counter {
+		private int n;
+		private int[] targets;
+		// the constraints of each square
+		private int[][] owners;
+		// the mines and the undecided squares of each constraint
+		private int[] mines;
+		private int[] open;
+		private boolean[] mine;
+		private int mineCount;
+		private int nodes;
+		private long deadline;
+		// whether it stopped at the deadline rather than at MAX_NODES
+		private boolean late;
+		private long[] counts;
+		private long[] hits;
+
+		Counter(int[] form, long deadline) {
+			this.deadline = deadline;
+			n = form[0];
+			int m = form[1];
+			targets = new int[m];
+			mines = new int[m];
+			open = new int[m];
+			int[][] members = new int[m][];
+			int[] sizes = new int[n];
+			for (int j = 0, p = 2; j < m; j ++) {
+				targets[j] = form[p];
+				members[j] = new int[form[p + 1]];
+				System.arraycopy(form, p + 2, members[j], 0, members[j].length);
+				open[j] = members[j].length;
+				for (int i : members[j]) {
+					sizes[i] ++;
+				}
+				p += 2 + members[j].length;
+			}
+			owners = new int[n][];
+			for (int i = 0; i < n; i ++) {
+				owners[i] = new int[sizes[i]];
+				sizes[i] = 0;
+			}
+			for (int j = 0; j < m; j ++) {
+				for (int i : members[j]) {
+					owners[i][sizes[i] ++] = j;
+				}
+			}
+			mine = new boolean[n];
+			counts = new long[n + 1];
+			hits = new long[(n + 1) * n];
+		}
+
+		/**
+		 * Tries both values of square i and the squares after it.
+		 * @return False if it took too long.
+		 */
+		boolean run(int i) {
+			if (++ nodes > MAX_NODES) {
+				return false;
+			}
+			if ((nodes & 1023) == 0 && System.nanoTime() > deadline) {
+				late = true;
+				return false;
+			}
+			if (i == n) {
+				counts[mineCount] ++;
+				for (int j = 0; j < n; j ++) {
+					if (mine[j]) {
+						hits[mineCount * n + j] ++;
+					}
+				}
+				return true;
+			}
+			for (int v = 0; v <= 1; v ++) {
+				boolean ok = set(i, v);
+				if (ok && ! run(i + 1)) {
+					return false;
+				}
+				unset(i, v);
+			}
+			return true;
+		}
+
+		private boolean set(int i, int v) {
+			boolean ok = true;
+			for (int j : owners[i]) {
+				open[j] --;
+				mines[j] += v;
+				if (mines[j] > targets[j] || mines[j] + open[j] < targets[j]) {
+					ok = false;
+				}
+			}
+			mine[i] = v == 1;
+			mineCount += v;
+			return ok;
+		}
+
+		private void unset(int i, int v) {
+			for (int j : owners[i]) {
+				open[j] ++;
+				mines[j] -= v;
+			}
+			mine[i] = false;
+			mineCount -= v;
+		}
+	}
+}
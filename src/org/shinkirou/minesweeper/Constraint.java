@@ -1,41 +1,48 @@
 package org.shinkirou.minesweeper;
 
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.Arrays;
 
 /**
  * Represents a set of a piece of constraint information that contains
- * the set of coordinates and number of mines.
+ * the set of squares and number of mines. The squares are cell ids, as
+ * given by {@link Board#cell(int, int)}, kept in ascending order.
  * @author SHiNKiROU
  */
-public class Constraint implements Set<Coordinate> {
-	private HashSet<Coordinate> set;
+public class Constraint {
+	private int[] cells;
 	private byte mines;
+	private int hash;
 
-	public Constraint() {
-		this((byte) 1);
-	}
-
-	public Constraint(byte mines) {
-		this.mines = mines;
-		set = new HashSet<Coordinate>();
+	/**
+	 * Constructs a constraint.
+	 * @param mines The number of mines.
+	 * @param cells The squares, in any order and without repeats.
+	 */
+	public Constraint(byte mines, int[] cells) {
+		this(mines, cells, cells.length);
 	}
 
-	public Constraint(byte mines, Collection<Coordinate> elems) {
-		this.mines = mines;
-		set = new HashSet<Coordinate>(elems);
+	/**
+	 * Constructs a constraint from the first squares of an array.
+	 * @param mines The number of mines.
+	 * @param cells The squares, in any order and without repeats.
+	 * @param count The number of squares to take from the array.
+	 */
+	public Constraint(byte mines, int[] cells, int count) {
+		this(mines, sorted(cells, count), true);
 	}
 
-	public Constraint(byte mines, int initialCap) {
+	private Constraint(byte mines, int[] cells, boolean sorted) {
 		this.mines = mines;
-		set = new HashSet<Coordinate>(initialCap);
+		this.cells = cells;
+		this.hash = 59 * Arrays.hashCode(cells) + mines;
 	}
 
-	public Constraint(byte mines, int initialCap, float loadFactor) {
-		this.mines = mines;
-		set = new HashSet<Coordinate>(initialCap, loadFactor);
+	private static int[] sorted(int[] cells, int count) {
+		int[] tmp = new int[count];
+		System.arraycopy(cells, 0, tmp, 0, count);
+		Arrays.sort(tmp);
+		return tmp;
 	}
 
 	/**
@@ -47,72 +54,78 @@ public class Constraint implements Set<Coordinate> {
 	}
 
 	/**
-	 * Sets the number of mines.
-	 * @param mines The number of mines.
+	 * Gets the squares, in ascending order. The array is shared and must not
+	 * be changed.
+	 * @return The cell ids.
 	 */
-	public void setMines(byte mines) {
-		this.mines = mines;
-	}
-
-	public Set<Coordinate> getSet() {
-		return set;
+	public int[] getCells() {
+		return cells;
 	}
 
 	public int size() {
-		return set.size();
+		return cells.length;
 	}
 
 	public boolean isEmpty() {
-		return set.isEmpty();
+		return cells.length == 0;
 	}
 
-	public boolean contains(Object o) {
-		return set.contains((Coordinate) o);
+	public boolean contains(int cell) {
+		return Arrays.binarySearch(cells, cell) >= 0;
 	}
 
-	public Iterator<Coordinate> iterator() {
-		return set.iterator();
-	}
-
-	public Object[] toArray() {
-		return set.toArray();
-	}
-
-	public <T> T[] toArray(T[] ts) {
-		return set.toArray(ts);
-	}
-
-	public boolean add(Coordinate e) {
-		return set.add(e);
-	}
-
-	public boolean remove(Object o) {
-		return set.remove((Coordinate) o);
-	}
-
-	public boolean containsAll(Collection<?> clctn) {
-		return set.containsAll(clctn);
-	}
-
-	public boolean addAll(Collection<? extends Coordinate> clctn) {
-		return set.addAll(clctn);
-	}
-
-	public boolean retainAll(Collection<?> clctn) {
-		return set.retainAll(clctn);
-	}
-
-	public boolean removeAll(Collection<?> clctn) {
-		return set.removeAll(clctn);
+	/**
+	 * Checks if the squares of this constraint are a proper subset of the
+	 * squares of another one.
+	 * @param other The other constraint.
+	 * @return True if every square of this one is in the other, which has
+	 * more squares.
+	 */
+	public boolean isProperSubsetOf(Constraint other) {
+		int[] a = cells;
+		int[] b = other.cells;
+		if (a.length >= b.length) {
+			return false;
+		}
+		// walk both sorted arrays together
+		int j = 0;
+		for (int i = 0; i < a.length; i ++) {
+			while (j < b.length && b[j] < a[i]) {
+				j ++;
+			}
+			if (j == b.length || b[j] != a[i]) {
+				return false;
+			}
+			j ++;
+		}
+		return true;
 	}
 
-	public void clear() {
-		set.clear();
+	/**
+	 * Takes a subset away from this constraint: the squares left over hold
+	 * the mines left over.
+	 * @param subset A constraint whose squares are all in this one.
+	 * @return The constraint of the squares left over.
+	 */
+	public Constraint minus(Constraint subset) {
+		int[] a = cells;
+		int[] b = subset.cells;
+		int[] c = new int[a.length - b.length];
+		int j = 0;
+		int k = 0;
+		for (int i = 0; i < a.length; i ++) {
+			if (j < b.length && b[j] == a[i]) {
+				j ++;
+			} else {
+				c[k ++] = a[i];
+			}
+		}
+		return new Constraint((byte) (mines - subset.mines), c, true);
 	}
 
 	@Override
 	public String toString() {
-		return set.toString() + " (" + mines + " mines)";
+		return Arrays.toString(cells) + " (" + mines + " mines)";
 	}
 
 	@Override
@@ -121,14 +134,12 @@ public class Constraint implements Set<Coordinate> {
 			return false;
 		}
 		Constraint other = (Constraint) obj;
-		return mines == other.mines && set.equals(other.set);
+		return hash == other.hash && mines == other.mines
+			&& Arrays.equals(cells, other.cells);
 	}
 
 	@Override
 	public int hashCode() {
-		int hash = 5;
-		hash = 59 * hash + (this.set != null ? this.set.hashCode() : 0);
-		hash = 59 * hash + this.mines;
 		return hash;
 	}
 }
@@ -0,0 +1,67 @@
+package org.shinkirou.minesweeper;
+
+/**
+ * A square whose content has been deduced: either safe to probe or a mine
+ * to mark.
+ * @author SHiNKiROU
+ */
+public class Deduction {
+
+	private int cell;
+	private boolean mine;
+
+	public Deduction(int cell, boolean mine) {
+		this.cell = cell;
+		this.mine = mine;
+	}
+
+	/**
+	 * Gets the square.
+	 * @return The cell id of the square.
+	 */
+	public int getCell() {
+		return cell;
+	}
+
+	/**
+	 * Checks if the square is a mine.
+	 * @return True if the square is a mine, false if it is safe.
+	 */
+	public boolean isMine() {
+		return mine;
+	}
+
+	/**
+	 * Probes or marks the square on a board.
+	 * @param board The board.
+	 */
+	public void apply(Board board) {
+		if (mine) {
+			board.mark(cell);
+		} else {
+			board.probe(cell);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Cell " + cell + (mine ? " is a mine" : " is safe");
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if ( ! (obj instanceof Deduction)) {
+			return false;
+		}
+		Deduction other = (Deduction) obj;
+		return mine == other.mine && cell == other.cell;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 3;
+		hash = 41 * hash + cell;
+		hash = 41 * hash + (mine ? 1 : 0);
+		return hash;
+	}
+}
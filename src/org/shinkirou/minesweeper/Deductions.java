@@ -0,0 +1,164 @@
+package org.shinkirou.minesweeper;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import org.shinkirou.util.IntSet;
+
+/**
+ * Deduces safe squares and mines lazily, one at a time, so the first ones
+ * can be played without waiting for the whole deduction. Work is only done
+ * when more deductions are asked for: first the constraints of the
+ * frontier squares are found, handing out the trivial ones right away,
+ * then the subset rule is applied to pairs of constraints.
+ * <p>
+ * The frontier squares are the ones the board had when the iterator was
+ * made, but the constraint of each one is only found when it is reached,
+ * from the board as it is then. Each constraint is true whenever it was
+ * found, as long as the marked squares are mines, so the deductions stay
+ * true while the board is being played. Squares which joined the frontier
+ * since the iterator was made are not looked at, and a deduction may be
+ * about a square which has been probed or marked since.
+ * @author SHiNKiROU
+ */
+public class Deductions implements Iterator<Deduction> {
+
+	private MinesweeperSolver solver;
+	// the frontier squares not looked at yet
+	private int[] frontier;
+	private int cursor;
+	// the constraints found so far, and how many have been compared
+	private List<Constraint> known;
+	private Set<Constraint> seen;
+	private int compared;
+	// the deductions not handed out yet
+	private LinkedList<Deduction> queue;
+	private IntSet deduced;
+
+	private long created;
+	private long firstSafe;
+	private long steps;
+
+	Deductions(MinesweeperSolver solver, int[] frontier) {
+		this.created = System.nanoTime();
+		this.firstSafe = -1;
+		this.solver = solver;
+		this.frontier = frontier;
+		this.cursor = 0;
+		this.known = new ArrayList<Constraint>();
+		this.seen = new HashSet<Constraint>();
+		this.compared = 0;
+		this.queue = new LinkedList<Deduction>();
+		this.deduced = new IntSet();
+	}
+
+	public boolean hasNext() {
+		while (queue.isEmpty() && step()) {
+			// keep working until something is found
+		}
+		return ! queue.isEmpty();
+	}
+
+	public Deduction next() {
+		if ( ! hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return queue.removeFirst();
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Checks if a deduction can be handed out without any more work.
+	 * @return True if {@link #next()} returns at once.
+	 */
+	public boolean isReady() {
+		return ! queue.isEmpty();
+	}
+
+	/**
+	 * Does one piece of work: finds the constraint of a frontier square, or
+	 * compares a constraint with the ones found before it.
+	 * @return False if there is no work left.
+	 */
+	public boolean step() {
+		if (cursor < frontier.length) {
+			// 1: the constraints of the frontier squares
+			add(solver.constrain(frontier[cursor ++]));
+		} else if (compared < known.size()) {
+			// 2: the subset rule, each pair once
+			Constraint e1 = known.get(compared);
+			for (int j = 0; j < compared; j ++) {
+				Constraint e2 = known.get(j);
+				if (e1.isProperSubsetOf(e2)) {
+					add(e2.minus(e1));
+				} else if (e2.isProperSubsetOf(e1)) {
+					add(e1.minus(e2));
+				}
+			}
+			compared ++;
+		} else {
+			return false;
+		}
+		steps ++;
+		return true;
+	}
+
+	private void add(Constraint e) {
+		if (e == null || e.isEmpty() || ! seen.add(e)) {
+			return;
+		}
+		known.add(e);
+		if (e.getMines() == 0) {
+			// if there are 0 mines, all the squares are safe
+			for (int c : e.getCells()) {
+				deduce(c, false);
+			}
+		} else if (e.getMines() == e.size()) {
+			// if the no. of mines is same as no. of squares, all the
+			// squares are mines
+			for (int c : e.getCells()) {
+				deduce(c, true);
+			}
+		}
+	}
+
+	private void deduce(int c, boolean mine) {
+		if (deduced.add(c)) {
+			queue.addLast(new Deduction(c, mine));
+			if ( ! mine && firstSafe < 0) {
+				firstSafe = System.nanoTime() - created;
+			}
+		}
+	}
+
+	/**
+	 * Gets the time it took to find the first safe square.
+	 * @return The time in nanoseconds, or -1 if none has been found yet.
+	 */
+	public long getFirstSafeLatency() {
+		return firstSafe;
+	}
+
+	/**
+	 * Gets the number of pieces of work done so far.
+	 * @return The number of steps.
+	 */
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Gets the constraints found so far.
+	 * @return The constraints.
+	 */
+	public List<Constraint> getConstraints() {
+		return known;
+	}
+}
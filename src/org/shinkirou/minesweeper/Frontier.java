@@ -0,0 +1,110 @@
+package org.shinkirou.minesweeper;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The unknown squares of a board as the estimators see them: the squares
+ * in some constraint, numbered in ascending order, and the others, which
+ * all share the same chance of being a mine.
+ * @author SHiNKiROU
+ */
+class Frontier {
+
+	// the squares in some constraint, in ascending order
+	final int[] cells;
+	// the mines not marked yet
+	final int left;
+	// the unknown squares in no constraint, and the first of them, or -1
+	final int others;
+	final int other;
+
+	/**
+	 * Finds the squares of the constraints, then counts the mines left and
+	 * the unknown squares outside the constraints in one pass over the
+	 * board.
+	 * @param board The board.
+	 * @param constraints The constraints found on the board.
+	 */
+	Frontier(Board board, Collection<Constraint> constraints) {
+		int total = 0;
+		for (Constraint e : constraints) {
+			total += e.size();
+		}
+		int[] all = new int[total];
+		total = 0;
+		for (Constraint e : constraints) {
+			System.arraycopy(e.getCells(), 0, all, total, e.size());
+			total += e.size();
+		}
+		cells = distinct(all);
+		int size = cells.length;
+
+		int left = board.getMines();
+		int others = 0;
+		int other = -1;
+		for (int i = 0, j = 0; i < board.size(); i ++) {
+			byte v = board.getInformation(i);
+			// both run in ascending order
+			while (j < size && cells[j] < i) {
+				j ++;
+			}
+			if (v == 9) {
+				left --;
+			} else if (v == 10 && (j == size || cells[j] != i)) {
+				others ++;
+				if (other < 0) {
+					other = i;
+				}
+			}
+		}
+		this.left = left;
+		this.others = others;
+		this.other = other;
+	}
+
+	/**
+	 * Finds the number of a square.
+	 * @param cell The cell id of a square in some constraint.
+	 * @return Its position in {@link #cells}.
+	 */
+	int index(int cell) {
+		return Arrays.binarySearch(cells, cell);
+	}
+
+	/**
+	 * Works out the logarithms of the factorials up to the number of
+	 * squares outside the constraints, to weigh the ways to place the mines
+	 * left on them.
+	 * @return The logarithm of <code>k!</code> at <code>k</code>.
+	 */
+	double[] logFactorials() {
+		double[] logFactorials = new double[others + 1];
+		for (int i = 1; i <= others; i ++) {
+			logFactorials[i] = logFactorials[i - 1] + Math.log(i);
+		}
+		return logFactorials;
+	}
+
+	/**
+	 * Sorts cell ids and removes the ones found twice.
+	 * @param cells The cell ids. They are sorted in place.
+	 * @return The distinct cell ids in ascending order: the same array if
+	 * there were none twice, or else a shorter copy.
+	 */
+	static int[] distinct(int[] cells) {
+		Arrays.sort(cells);
+		int n = 0;
+		for (int i = 0; i < cells.length; i ++) {
+			if (n == 0 || cells[n - 1] != cells[i]) {
+				cells[n ++] = cells[i];
+			}
+		}
+		if (n == cells.length) {
+			return cells;
+		}
+		int[] tmp = new int[n];
+		System.arraycopy(cells, 0, tmp, 0, n);
+		return tmp;
+	}
+}
@@ -0,0 +1,37 @@
+package org.shinkirou.minesweeper;
+
+/**
+ * A board of hexagons, where each square has up to 6 squares around it.
+ * The rows are laid out like bricks: every odd row is shifted half a square
+ * to the right. The squares around each square are worked out once, when
+ * the topology is constructed.
+ * @author SHiNKiROU
+ */
+public class HexagonalTopology extends PrecomputedTopology {
+
+	public HexagonalTopology(int width, int height) {
+		super(width, height);
+	}
+
+	protected int neighbours(int x, int y, int[] around) {
+		int w = getWidth();
+		int h = getHeight();
+		// the rows above and below reach one square further to the left on
+		// even rows, and one square further to the right on odd rows
+		int shift = y % 2 == 0 ? -1 : 0;
+		int n = 0;
+		for (int dy = -1; dy <= 1; dy ++) {
+			int ny = y + dy;
+			if (ny < 0 || ny >= h) {
+				continue;
+			}
+			int from = dy == 0 ? x - 1 : x + shift;
+			for (int nx = from; nx <= from + (dy == 0 ? 2 : 1); nx ++) {
+				if ((dy != 0 || nx != x) && nx > -1 && nx < w) {
+					around[n ++] = ny * w + nx;
+				}
+			}
+		}
+		return n;
+	}
+}
@@ -0,0 +1,105 @@
+package org.shinkirou.minesweeper;
+
+/**
+ * Counts the number hints of a freshly generated board in bulk.
+ * @author SHiNKiROU
+ */
+public class HintCounter {
+
+	private HintCounter() {
+	}
+
+	/**
+	 * Counts the mines around every square. Rectangular boards take the row
+	 * by row path, other shapes look at each square's neighbours.
+	 * @param topology The shape of the board.
+	 * @param values The squares, as <code>y * width + x</code>: 9 for a mine
+	 * and 0 for anything else. The counts are written over the zeros.
+	 */
+	public static void count(Topology topology, byte[] values) {
+		if (topology instanceof RectangularTopology) {
+			countRows(topology.getWidth(), topology.getHeight(), values);
+		} else {
+			countNeighbours(topology, values);
+		}
+	}
+
+	/**
+	 * Counts the mines around every square of a rectangular board, a row at
+	 * a time. Each row is turned into a 0 or 1 mine row with a blank square
+	 * at each end, the three rows around it are added up into column sums,
+	 * and three column sums next to each other make a count. None of the
+	 * loops branch, so the JIT compiler can turn them into SIMD code.
+	 * @param width The width of the board, as an array size unit.
+	 * @param height The height of the board, as an array size unit.
+	 * @param values The squares, as <code>y * width + x</code>: 9 for a mine
+	 * and 0 for anything else. The counts are written over the zeros.
+	 */
+	public static void countRows(int width, int height, byte[] values) {
+		// the mine rows above, at and below the current row
+		byte[] above = new byte[width + 2];
+		byte[] here = new byte[width + 2];
+		byte[] below = new byte[width + 2];
+		byte[] columns = new byte[width + 2];
+		mineRow(values, 0, width, here);
+		for (int y = 0; y < height; y ++) {
+			if (y + 1 < height) {
+				mineRow(values, (y + 1) * width, width, below);
+			} else {
+				clear(below);
+			}
+			for (int x = 0; x < width + 2; x ++) {
+				columns[x] = (byte) (above[x] + here[x] + below[x]);
+			}
+			int row = y * width;
+			for (int x = 0; x < width; x ++) {
+				int mine = here[x + 1];
+				int n = columns[x] + columns[x + 1] + columns[x + 2] - mine;
+				// a mine stays 9
+				values[row + x] = (byte) (n + mine * (9 - n));
+			}
+			// move down a row
+			byte[] tmp = above;
+			above = here;
+			here = below;
+			below = tmp;
+		}
+	}
+
+	/**
+	 * Counts the mines around every square by looking at its neighbours.
+	 * Works for any shape of board.
+	 * @param topology The shape of the board.
+	 * @param values The squares, as <code>y * width + x</code>: 9 for a mine
+	 * and 0 for anything else. The counts are written over the zeros.
+	 */
+	public static void countNeighbours(Topology topology, byte[] values) {
+		int[] around = new int[Topology.MAX_NEIGHBOURS];
+		for (int i = 0; i < values.length; i ++) {
+			if (values[i] != 9) {
+				byte n = 0;
+				int count = topology.neighbours(i, around);
+				for (int k = 0; k < count; k ++) {
+					if (values[around[k]] == 9) {
+						n ++;
+					}
+				}
+				// set number hint
+				values[i] = n;
+			}
+		}
+	}
+
+	private static void mineRow(byte[] values, int from, int width, byte[] row) {
+		// 9 >> 3 is 1 and 0 >> 3 is 0
+		for (int x = 0; x < width; x ++) {
+			row[x + 1] = (byte) (values[from + x] >> 3);
+		}
+	}
+
+	private static void clear(byte[] row) {
+		for (int x = 0; x < row.length; x ++) {
+			row[x] = 0;
+		}
+	}
+}
@@ -1,6 +1,8 @@
 package org.shinkirou.minesweeper;
 
-import org.shinkirou.util.SetOperations;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -13,6 +15,19 @@ public class MinesweeperSolver {
 	private Set<Constraint> sets;
 	private int count;
 	private boolean inspected = false;
+	// the constraint given by each frontier square, by cell id
+	private Constraint[] constraints;
+	// the squares changed since the last inspection, or null if unknown
+	private int[] dirty;
+	// the modification count of the board at the last inspection
+	private int modCount;
+	// the guess engine
+	private MonteCarloSampler sampler;
+	// the squares around the square being looked at, and the unknown ones
+	private int[] around;
+	private int[] unknown;
+	// solved components shared with other solvers, or null to only sample
+	private ComponentCache cache;
 
 	/**
 	 * Constructs an instance of <code>MinesweeperSolver</code>
@@ -22,119 +37,40 @@ public class MinesweeperSolver {
 		this.board = board;
 		this.sets = new HashSet<Constraint>();
 		this.count = 0;
+		this.constraints = new Constraint[board.size()];
+		this.dirty = null;
+		this.sampler = new MonteCarloSampler();
+		this.around = new int[Topology.MAX_NEIGHBOURS];
+		this.unknown = new int[Topology.MAX_NEIGHBOURS];
 	}
 
 	public void inspect() {
-		sets.clear();
-		for (int y = 0, w = board.getWidth(), h = board.getHeight(); y < h; y ++) {
-			for (int x = 0; x < w; x ++) {
-				byte n = board.getInformation(x, y);
-				if (n > 0 && n < 9) {
-					Constraint e = new Constraint();
-					// look around
-					// top-left
-					if (y - 1 > -1 && x - 1 > -1) {
-						// get the known information of the square
-						byte i = board.getInformation(x - 1, y - 1);
-						if (i == 9) {
-							// if it's already marked: decrease the number
-							n --;
-						} else if (i == 10) {
-							// if it's unknown: add the coordinate to the set
-							e.add(new Coordinate(x - 1, y - 1));
-						}
-					}
-					// top
-					if (y - 1 > -1) {
-						// get the known information of the square
-						byte i = board.getInformation(x, y - 1);
-						if (i == 9) {
-							// if it's already marked: decrease the number
-							n --;
-						} else if (i == 10) {
-							// if it's unknown: add the coordinate to the set
-							e.add(new Coordinate(x, y - 1));
-						}
-					}
-					// top-right
-					if (y - 1 > -1 && x + 1 < board.getWidth()) {
-						// get the known information of the square
-						byte i = board.getInformation(x + 1, y - 1);
-						if (i == 9) {
-							// if it's already marked: decrease the number
-							n --;
-						} else if (i == 10) {
-							// if it's unknown: add the coordinate to the set
-							e.add(new Coordinate(x + 1, y - 1));
-						}
-					}
-					// mid-left
-					if (x - 1 > -1) {
-						// get the known information of the square
-						byte i = board.getInformation(x - 1, y);
-						if (i == 9) {
-							// if it's already marked: decrease the number
-							n --;
-						} else if (i == 10) {
-							// if it's unknown: add the coordinate to the set
-							e.add(new Coordinate(x - 1, y));
-						}
-					}
-					// mid-right
-					if (x + 1 < board.getWidth()) {
-						// get the known information of the square
-						byte i = board.getInformation(x + 1, y);
-						if (i == 9) {
-							// if it's already marked: decrease the number
-							n --;
-						} else if (i == 10) {
-							// if it's unknown: add the coordinate to the set
-							e.add(new Coordinate(x + 1, y));
-						}
-					}
-					// lower-left
-					if (y + 1 < board.getHeight() && x - 1 > -1) {
-						// get the known information of the square
-						byte i = board.getInformation(x - 1, y + 1);
-						if (i == 9) {
-							// if it's already marked: decrease the number
-							n --;
-						} else if (i == 10) {
-							// if it's unknown: add the coordinate to the set
-							e.add(new Coordinate(x - 1, y + 1));
-						}
-					}
-					// lower
-					if (y + 1 < board.getHeight()) {
-						// get the known information of the square
-						byte i = board.getInformation(x, y + 1);
-						if (i == 9) {
-							// if it's already marked: decrease the number
-							n --;
-						} else if (i == 10) {
-							// if it's unknown: add the coordinate to the set
-							e.add(new Coordinate(x, y + 1));
-						}
-					}
-					// lower-right
-					if (y + 1 < board.getHeight() && x + 1 < board.getWidth()) {
-						// get the known information of the square
-						byte i = board.getInformation(x + 1, y + 1);
-						if (i == 9) {
-							// if it's already marked: decrease the number
-							n --;
-						} else if (i == 10) {
-							// if it's unknown: add the coordinate to the set
-							e.add(new Coordinate(x + 1, y + 1));
-						}
-					}
-					e.setMines(n);
-					if ( ! e.isEmpty()) {
-						sets.add(e);
-					}
+		// 1: find the constraint of each frontier square
+		int[] frontier = board.getFrontier();
+		if (dirty == null || board.getModCount() != modCount) {
+			// the board was changed from the outside: look at all of it
+			Arrays.fill(constraints, null);
+			for (int f : frontier) {
+				constraints[f] = constrain(f);
+			}
+		} else {
+			// only the squares around the changed ones can be different
+			Topology t = board.getTopology();
+			int[] next = new int[Topology.MAX_NEIGHBOURS];
+			for (int i : dirty) {
+				constraints[i] = constrain(i);
+				int n = t.neighbours(i, next);
+				for (int k = 0; k < n; k ++) {
+					constraints[next[k]] = constrain(next[k]);
 				}
 			}
 		}
+		dirty = new int[0];
+		modCount = board.getModCount();
+		sets.clear();
+		for (int f : frontier) {
+			sets.add(constraints[f]);
+		}
 
 		// 2: keep using the subset rule until exhausted
 		boolean changed = true;
@@ -145,16 +81,10 @@ public class MinesweeperSolver {
 			// using Iterators causes ConcurrentModificationException
 			for (Constraint e1 : list) {
 				for (Constraint e2 : list) {
-					if (!e1.equals(e2)) {
-						// if e1 proper subset e2, c = e2 diff e1,
-						//    mines of c = mines of e2 - mines of e1
-						if (SetOperations.properSubset(e1.getSet(), e2.getSet())) {
-							Set<Coordinate> set = SetOperations.difference(e2, e1);
-							Constraint c = new Constraint(
-								(byte) (e2.getMines() - e1.getMines()),
-								set);
-							changed = changed || sets.add(c);
-						}
+					// if e1 proper subset e2, c = e2 diff e1,
+					//    mines of c = mines of e2 - mines of e1
+					if (e1.isProperSubsetOf(e2) && sets.add(e2.minus(e1))) {
+						changed = true;
 					}
 				}
 			}
@@ -162,6 +92,36 @@ public class MinesweeperSolver {
 		inspected = true;
 	}
 
+	/**
+	 * Finds the constraint given by a square.
+	 * @param i The cell id of the square.
+	 * @return The unknown squares around it and the number of mines among
+	 * them, or null if the square gives no constraint.
+	 */
+	Constraint constrain(int i) {
+		byte n = board.getInformation(i);
+		if (n < 1 || n > 8) {
+			return null;
+		}
+		int count = board.getTopology().neighbours(i, around);
+		int size = 0;
+		// look around
+		for (int k = 0; k < count; k ++) {
+			int j = around[k];
+			// get the known information of the square
+			byte v = board.getInformation(j);
+			if (v == 9) {
+				// if it's already marked: decrease the number
+				n --;
+			} else if (v == 10) {
+				// if it's unknown: add the square to the set
+				unknown[size ++] = j;
+			}
+		}
+		// the constraint keeps a copy of the squares
+		return size == 0 ? null : new Constraint(n, unknown, size);
+	}
+
 	/**
 	 * Perform an iteration of the solving process.
 	 */
@@ -172,28 +132,284 @@ public class MinesweeperSolver {
 			throw new IllegalStateException("The board is already solved or failed.");
 		}
 		// find all constraints
-		if ( ! inspected) {
+		if ( ! inspected || board.getModCount() != modCount) {
 			inspect();
 		}
 
-		// mark or probe the squares
+		// collect the squares
+		int safeCount = 0;
+		int mineCount = 0;
+		for (Constraint e : sets) {
+			if (e.getMines() == 0) {
+				safeCount += e.size();
+			} else if (e.getMines() == e.size()) {
+				mineCount += e.size();
+			}
+		}
+		int[] safe = new int[safeCount];
+		int[] mines = new int[mineCount];
+		safeCount = 0;
+		mineCount = 0;
 		for (Constraint e : sets) {
 			byte m = e.getMines();
 
 			if (m == 0) {
 				// if there are 0 mines, all the squares are safe
-				for (Coordinate c : e) {
-					board.probe(c.x, c.y);
-				}
+				System.arraycopy(e.getCells(), 0, safe, safeCount, e.size());
+				safeCount += e.size();
 			} else if (m == e.size()) {
 				// if the no. of mines is same as no. of squares, all the
 				// squares are mines
-				for (Coordinate c : e) {
-					board.mark(c.x, c.y);
+				System.arraycopy(e.getCells(), 0, mines, mineCount, e.size());
+				mineCount += e.size();
+			}
+		}
+
+		// mark or probe the squares, each one only once; the next
+		// inspection only has to look around the ones that changed
+		dirty = board.apply(Frontier.distinct(safe), Frontier.distinct(mines));
+		modCount = board.getModCount();
+		// if nothing changed, the constraints are still up to date
+		inspected = dirty.length == 0;
+	}
+
+	/**
+	 * Writes the solver state for a {@link Checkpoint}: the iteration count,
+	 * whether the constraints are up to date with the board, and the
+	 * constraints themselves.
+	 * @param out Where to write it.
+	 */
+	void write(DataOutput out) throws IOException {
+		Checkpoint.writeVarint(out, count);
+		// constraints found before the board was changed are of no use
+		out.writeBoolean(inspected && board.getModCount() == modCount);
+		Checkpoint.writeVarint(out, sets.size());
+		for (Constraint e : sets) {
+			out.writeByte(e.getMines());
+			int[] cells = e.getCells();
+			Checkpoint.writeVarint(out, cells.length);
+			// the cells are in ascending order: write the gaps between them
+			int last = 0;
+			for (int c : cells) {
+				Checkpoint.writeVarint(out, c - last);
+				last = c;
+			}
+		}
+	}
+
+	/**
+	 * Reads the solver state written by {@link #write(DataOutput)}, after
+	 * the board has been read. The constraint of each frontier square is
+	 * found again, which only takes a pass over the frontier, so the next
+	 * inspection can carry on from where the saved one left off.
+	 * @param in Where to read it from.
+	 * @throws IOException If the state cannot be read or is not valid.
+	 */
+	void read(DataInput in) throws IOException {
+		count = Checkpoint.readVarint(in);
+		inspected = in.readBoolean();
+		int n = Checkpoint.readVarint(in);
+		int size = board.size();
+		sets = new HashSet<Constraint>(Math.max(16, n * 2));
+		for (int k = 0; k < n; k ++) {
+			byte mines = in.readByte();
+			int[] cells = new int[Checkpoint.readVarint(in)];
+			int last = 0;
+			for (int j = 0; j < cells.length; j ++) {
+				last += Checkpoint.readVarint(in);
+				if (last < 0 || last >= size || (j > 0 && last == cells[j - 1])) {
+					throw new IOException("Invalid cell " + last
+						+ " in constraint " + k + ".");
 				}
+				cells[j] = last;
 			}
+			sets.add(new Constraint(mines, cells));
 		}
-		inspected = false;
+		for (int f : board.getFrontier()) {
+			constraints[f] = constrain(f);
+		}
+		dirty = new int[0];
+		modCount = board.getModCount();
+	}
+
+	/**
+	 * Deduces safe squares and mines one at a time, doing only as much work
+	 * as is needed to hand out the next one.
+	 * @return The deductions about the board as it is now.
+	 */
+	public Deductions deductions() {
+		return new Deductions(this, board.getFrontier());
+	}
+
+	/**
+	 * Finds a move within a time limit. See {@link #solve(long, long)}.
+	 * @param timeout The time limit in milliseconds.
+	 * @return The move, or null if there are no unknown squares.
+	 */
+	public Move solve(long timeout) {
+		return solve(timeout, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Finds a move within a time limit and a limit on the deduction steps.
+	 * The cheapest work is done first: the trivial constraints, then the
+	 * subset rule, then working out the chances with the time left, exactly
+	 * if there is a {@link ComponentCache} and the frontier is small enough,
+	 * or else by sampling mine configurations.
+	 * When the time runs out, the best move found so far is returned.
+	 * @param timeout The time limit in milliseconds.
+	 * @param steps The most deduction steps to take, see
+	 * {@link Deductions#step()}.
+	 * @return The move, or null if there are no unknown squares. It tells
+	 * whether it is proven safe or only a guess.
+	 */
+	public Move solve(long timeout, long steps) {
+		long deadline = System.nanoTime() + timeout * 1000000L;
+		Deductions d = deductions();
+
+		// 1 and 2: the trivial constraints, then the subset rule
+		while ( ! d.isReady() && d.getSteps() < steps
+		       && System.nanoTime() < deadline && d.step()) {
+			// keep working until something is found
+		}
+		if (d.isReady()) {
+			return new Move(d.next());
+		}
+
+		// 3: work out the chances exactly, or sample mine configurations if
+		// there is time for it
+		List<Constraint> known = d.getConstraints();
+		ProbabilityEstimate estimate = cache == null ? null
+			: ComponentSolver.estimate(board, frontierConstraints(), cache,
+			                           deadline);
+		if (estimate == null && deadline - System.nanoTime() > 1000000L) {
+			estimate = sampler.estimate(board, known, deadline);
+		}
+		if (estimate != null) {
+			int c = estimate.getSafest();
+			if (c >= 0) {
+				double q = estimate.getProbability(c);
+				// an exact chance of 0 is a proof
+				return new Move(c, false, estimate.isExact() && q == 0, q);
+			}
+		}
+
+		// 4: out of time: the constraint with the fewest mines per square
+		int left = board.getMines();
+		int unknown = 0;
+		int best = -1;
+		for (int i = 0, size = board.size(); i < size; i ++) {
+			byte n = board.getInformation(i);
+			if (n == 9) {
+				left --;
+			} else if (n == 10) {
+				unknown ++;
+				if (best < 0) {
+					best = i;
+				}
+			}
+		}
+		if (best < 0) {
+			return null;
+		}
+		double p = (double) left / unknown;
+		for (Constraint e : known) {
+			double q = (double) e.getMines() / e.size();
+			if (q < p) {
+				p = q;
+				best = e.getCells()[0];
+			}
+		}
+		return new Move(best, false, false, p);
+	}
+
+	/**
+	 * Estimates the chance of each unknown square being a mine, for when
+	 * there is nothing left to deduce. With a {@link ComponentCache}, the
+	 * chances are worked out exactly where the frontier is small enough, and
+	 * only sampled where it is not. The exact count and the sampling share
+	 * the time budget of the sampler.
+	 * @return The estimate.
+	 */
+	public ProbabilityEstimate estimate() {
+		long deadline = System.nanoTime() + sampler.getTimeBudget() * 1000000L;
+		Collection<Constraint> frontier = null;
+		if (cache != null) {
+			frontier = frontierConstraints();
+			ProbabilityEstimate p = ComponentSolver.estimate(board, frontier,
+				cache, deadline);
+			if (p != null) {
+				return p;
+			}
+		}
+		// inspect() has no time limit, so its constraints are only reused
+		// when up to date; the frontier ones are enough for sampling
+		if (inspected && board.getModCount() == modCount) {
+			return sampler.estimate(board, sets, deadline);
+		}
+		if (frontier == null) {
+			frontier = frontierConstraints();
+		}
+		return sampler.estimate(board, frontier, deadline);
+	}
+
+	/**
+	 * Finds the constraint of each frontier square, without the ones derived
+	 * from them, which would only make the components harder to match.
+	 */
+	private Collection<Constraint> frontierConstraints() {
+		Set<Constraint> list = new HashSet<Constraint>();
+		for (int f : board.getFrontier()) {
+			Constraint e = constrain(f);
+			if (e != null) {
+				list.add(e);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Guesses the square which is the least likely to be a mine.
+	 * @return The cell id of the square to probe, or -1 if there are no
+	 * unknown squares.
+	 */
+	public int guess() {
+		return estimate().getSafest();
+	}
+
+	/**
+	 * Gets the sampler used to estimate the chances of mines. Its time and
+	 * sample budgets can be changed to keep guesses within a time limit.
+	 * @return The sampler.
+	 */
+	public MonteCarloSampler getSampler() {
+		return sampler;
+	}
+
+	/**
+	 * Gets the cache of solved components.
+	 * @return The cache, or null if there is none.
+	 */
+	public ComponentCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Sets a cache of solved components, which can be shared with other
+	 * solvers, even on other threads. Guesses are then worked out exactly
+	 * wherever the frontier allows, instead of being sampled.
+	 * @param cache The cache, or null to always sample.
+	 */
+	public void setCache(ComponentCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Gets the board being solved.
+	 * @return The board.
+	 */
+	public Board getBoard() {
+		return board;
 	}
 
 	/**
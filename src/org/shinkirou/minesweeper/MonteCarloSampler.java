@@ -0,0 +1,691 @@
+package org.shinkirou.minesweeper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Estimates the chance of each unknown square being a mine by sampling mine
+ * configurations, for frontiers too big to be enumerated. Each thread runs
+ * its own chain over the squares in the constraints, which starts from a
+ * configuration found by backtracking and then resamples small blocks of
+ * squares exactly, so it only visits configurations that meet every
+ * constraint and the number of mines left, with the chance they have in
+ * the real game.
+ * <p>
+ * The budget counts the steps of the chains, each of which is a sample, so
+ * with a seed the estimate only depends on the board unless the time
+ * budget runs out first.
+ * @author SHiNKiROU
+ */
+public class MonteCarloSampler {
+
+	// the most squares resampled in one step
+	private static final int BLOCK = 24;
+	// the most ways to fill a block, and the most partial ways looked at
+	private static final int MAX_WAYS = 4096;
+	private static final int MAX_NODES = 1 << 14;
+	// the most partial configurations looked at to find the first one
+	private static final long START_NODES = 1 << 22;
+	// how many sweeps are thrown away before counting
+	private static final int BURN_IN = 4;
+	// the z score of ProbabilityEstimate.CONFIDENCE
+	private static final double Z = 1.96;
+	// the number of batches the samples of a chain are split into
+	private static final int BATCHES = 32;
+
+	private long timeBudget;
+	private long sampleBudget;
+	private int threads;
+	private Random random;
+
+	/**
+	 * Constructs a sampler that runs one chain on each processor, for at
+	 * most 50 milliseconds or 100000 samples.
+	 */
+	public MonteCarloSampler() {
+		timeBudget = 50;
+		sampleBudget = 100000;
+		threads = Runtime.getRuntime().availableProcessors();
+		random = new Random();
+	}
+
+	/**
+	 * Gets the longest time a call to {@link #estimate} may take.
+	 * @return The time in milliseconds.
+	 */
+	public long getTimeBudget() {
+		return timeBudget;
+	}
+
+	/**
+	 * Sets the longest time a call to {@link #estimate} may take.
+	 * @param timeBudget The time in milliseconds.
+	 */
+	public void setTimeBudget(long timeBudget) {
+		this.timeBudget = timeBudget;
+	}
+
+	/**
+	 * Gets the number of samples after which the chains stop.
+	 * @return The number of samples over all chains.
+	 */
+	public long getSampleBudget() {
+		return sampleBudget;
+	}
+
+	/**
+	 * Sets the number of samples after which the chains stop.
+	 * @param sampleBudget The number of samples over all chains.
+	 */
+	public void setSampleBudget(long sampleBudget) {
+		this.sampleBudget = sampleBudget;
+	}
+
+	/**
+	 * Gets the number of chains, each running on its own thread.
+	 * @return The number of chains.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the number of chains, each running on its own thread.
+	 * @param threads The number of chains.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException(
+				"Invalid number of threads: " + threads + ".");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Sets the seed the chains are seeded from.
+	 * @param seed The seed.
+	 */
+	public void setSeed(long seed) {
+		random = new Random(seed);
+	}
+
+	/**
+	 * Estimates the chance of each unknown square of a board being a mine.
+	 * @param board The board.
+	 * @param constraints The constraints found on the board.
+	 * @return The estimate.
+	 */
+	public ProbabilityEstimate estimate(Board board,
+	                                    Collection<Constraint> constraints) {
+		return estimate(board, constraints,
+			System.nanoTime() + timeBudget * 1000000L);
+	}
+
+	/**
+	 * Estimates the chance of each unknown square of a board being a mine,
+	 * stopping at a deadline if it comes before the time budget runs out.
+	 * @param board The board.
+	 * @param constraints The constraints found on the board.
+	 * @param deadline When to stop, as a {@link System#nanoTime()} value.
+	 * @return The estimate.
+	 */
+	public ProbabilityEstimate estimate(Board board,
+	                                    Collection<Constraint> constraints,
+	                                    long deadline) {
+		long start = System.nanoTime();
+		// number the squares in the constraints, in ascending order
+		Frontier frontier = new Frontier(board, constraints);
+		int[] cells = frontier.cells;
+		int size = cells.length;
+		int[][] members = new int[constraints.size()][];
+		int[] targets = new int[constraints.size()];
+		int n = 0;
+		for (Constraint e : constraints) {
+			members[n] = new int[e.size()];
+			int j = 0;
+			for (int c : e.getCells()) {
+				members[n][j ++] = frontier.index(c);
+			}
+			targets[n ++] = e.getMines();
+		}
+		// the constraints of each square
+		int[][] owners = new int[size][];
+		int[] sizes = new int[size];
+		for (int[] m : members) {
+			for (int i : m) {
+				sizes[i] ++;
+			}
+		}
+		for (int i = 0; i < owners.length; i ++) {
+			owners[i] = new int[sizes[i]];
+			sizes[i] = 0;
+		}
+		for (int k = 0; k < members.length; k ++) {
+			for (int i : members[k]) {
+				owners[i][sizes[i] ++] = k;
+			}
+		}
+
+		// the mines left and the unknown squares outside the constraints
+		int left = frontier.left;
+		int others = frontier.others;
+		int other = frontier.other;
+		double[] logFactorials = frontier.logFactorials();
+
+		// run the chains
+		deadline = Math.min(deadline, start + timeBudget * 1000000L);
+		long budget = (sampleBudget + threads - 1) / threads;
+		List<Chain> chains = new ArrayList<Chain>();
+		for (int t = 0; t < threads; t ++) {
+			chains.add(new Chain(members, targets, owners, left, others,
+				logFactorials, deadline, budget, random.nextLong()));
+		}
+		if (threads == 1) {
+			chains.get(0).call();
+		} else {
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			try {
+				for (Future<Chain> f : pool.invokeAll(chains)) {
+					f.get();
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException ex) {
+				throw new IllegalStateException(ex.getCause());
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		// pool the counts of the chains
+		long samples = 0;
+		double[] probabilities = new double[size];
+		double[] errors = new double[size];
+		double otherSum = 0;
+		for (Chain c : chains) {
+			samples += c.samples;
+			otherSum += c.otherSum;
+			for (int i = 0; i < size; i ++) {
+				probabilities[i] += c.hits[i];
+			}
+		}
+		if (samples == 0) {
+			// no configuration was found in time: fall back to the density
+			double density = (double) left / (size + others);
+			for (int i = 0; i < size; i ++) {
+				probabilities[i] = density;
+				errors[i] = 1;
+			}
+			return new ProbabilityEstimate(cells, probabilities, errors, other,
+				density, 1, 0, false);
+		}
+		for (int i = 0; i < size; i ++) {
+			probabilities[i] /= samples;
+			errors[i] = error(chains, i, probabilities[i], samples);
+		}
+		double otherProbability = otherSum / samples;
+		double otherError = error(chains, -1, otherProbability, samples);
+		return new ProbabilityEstimate(cells, probabilities, errors, other,
+			otherProbability, otherError, samples, false);
+	}
+
+	/**
+	 * Works out the error of an estimate with batch means: the samples of
+	 * each chain are split into batches, and the error comes from how much
+	 * the batches disagree. Unlike counting the samples as independent,
+	 * this also covers a chain being slow to move.
+	 */
+	private static double error(List<Chain> chains, int i, double p,
+	                            long samples) {
+		int n = 0;
+		double squares = 0;
+		for (Chain c : chains) {
+			for (int b = 0; b <= c.batches && b < BATCHES; b ++) {
+				if (c.batchSamples[b] > 0) {
+					double d = c.batchHits[b][i < 0 ? c.hits.length : i]
+						- p * c.batchSamples[b];
+					squares += d * d;
+					n ++;
+				}
+			}
+		}
+		if (n < 2) {
+			return 1;
+		}
+		double variance = squares / ((double) samples * samples) * n / (n - 1);
+		return Math.min(1, Z * Math.sqrt(variance));
+	}
+
+	/**
+	 * A single chain. Each step picks a block of squares around one or two
+	 * random squares, finds every way to place mines in the block that meets
+	 * the constraints, with the squares outside it as they are, and picks
+	 * one of them with its chance in the real game. The chain only ever
+	 * visits configurations of the real game, and every one of them is
+	 * counted.
+	 */
+	private static class Chain implements Callable<Chain> {
+
+		private int[][] members;
+		private int[] targets;
+		private int[][] owners;
+		private int left;
+		private int others;
+		private double[] logFactorials;
+		private long deadline;
+		private long budget;
+		private Random random;
+
+		// the current configuration
+		private boolean[] mines;
+		private int[] counts;
+		private int mineCount;
+
+		// the block being resampled, and the constraints around it
+		private int[] block;
+		private int blockSize;
+		private int[] inBlock;
+		private int[] touched;
+		private int touchedSize;
+		private int[] seen;
+		private int stamp;
+		// the mines each constraint still needs, and its squares left open
+		private int[] need;
+		private int[] open;
+		// the ways to fill the block, a bit per square, and their mines
+		private long[] ways;
+		private int[] wayMines;
+		private int wayCount;
+		private int nodes;
+
+		// what the chain has seen: time is the number of samples so far, and
+		// each mine has been one since the time it was placed
+		private long time;
+		private long[] since;
+		private double[] pending;
+		private double otherPending;
+		private double[] hits;
+		private double otherSum;
+		private long samples;
+		// the same, split into batches, the others are the last column
+		private double[][] batchHits;
+		private long[] batchSamples;
+		private int batches;
+		private long batchSize;
+
+		Chain(int[][] members, int[] targets, int[][] owners, int left,
+		      int others, double[] logFactorials, long deadline, long budget,
+		      long seed) {
+			this.members = members;
+			this.targets = targets;
+			this.owners = owners;
+			this.left = left;
+			this.others = others;
+			this.logFactorials = logFactorials;
+			this.deadline = deadline;
+			this.budget = budget;
+			this.random = new Random(seed);
+		}
+
+		public Chain call() {
+			int size = owners.length;
+			mines = new boolean[size];
+			counts = new int[members.length];
+			block = new int[BLOCK];
+			inBlock = new int[size];
+			touched = new int[members.length];
+			seen = new int[members.length];
+			need = new int[members.length];
+			open = new int[members.length];
+			ways = new long[MAX_WAYS];
+			wayMines = new int[MAX_WAYS];
+			since = new long[size];
+			pending = new double[size];
+			hits = new double[size];
+			batchHits = new double[BATCHES][size + 1];
+			batchSamples = new long[BATCHES];
+			batches = 0;
+			batchSize = 1;
+			if ( ! start()) {
+				// no configuration was found: no samples
+				return this;
+			}
+
+			// a sweep resamples about every square once
+			long burnIn = BURN_IN * Math.max(1, 2 * size / BLOCK);
+			for (long step = 0; step < burnIn + budget; step ++) {
+				// a step can look at thousands of fills, so the clock is
+				// cheap next to it
+				if (System.nanoTime() > deadline) {
+					break;
+				}
+				move();
+				if (step >= burnIn) {
+					time ++;
+					samples ++;
+					if (others > 0) {
+						otherPending += (double) (left - mineCount) / others;
+					}
+					if (++ batchSamples[batches] == batchSize) {
+						flush();
+						nextBatch();
+					}
+				}
+			}
+			flush();
+			return this;
+		}
+
+		/**
+		 * Finds a first configuration by backtracking over the squares in
+		 * order, trying a mine or not at random first.
+		 * @return False if there is none, or it took too long.
+		 */
+		private boolean start() {
+			int size = mines.length;
+			for (int k = 0; k < members.length; k ++) {
+				need[k] = targets[k];
+				open[k] = members[k].length;
+			}
+			double density = (double) left / Math.max(1, size + others);
+			// tried[i]: 0 if square i is not set, 1 if it has its first value,
+			// 2 if it has its second
+			int[] tried = new int[size];
+			boolean[] first = new boolean[size];
+			int i = 0;
+			long count = 0;
+			while (true) {
+				if (i == size) {
+					if (mineCount >= left - others) {
+						return true;
+					}
+				} else if (tried[i] == 0) {
+					first[i] = random.nextDouble() < density;
+					tried[i] = 1;
+					// leave room for enough mines
+					if (set(i, first[i])
+					    && mineCount + size - i - 1 >= left - others) {
+						i ++;
+					}
+					continue;
+				}
+				if ((++ count & 1023) == 0 && (count > START_NODES
+				    || System.nanoTime() > deadline)) {
+					return false;
+				}
+				// back off to the last square with a value left to try
+				int j = Math.min(i, size - 1);
+				while (j >= 0 && tried[j] == 2) {
+					unset(j);
+					tried[j] = 0;
+					j --;
+				}
+				if (j < 0) {
+					return false;
+				}
+				unset(j);
+				tried[j] = 2;
+				i = j;
+				if (set(j, ! first[j])
+				    && mineCount + size - j - 1 >= left - others) {
+					i ++;
+				}
+			}
+		}
+
+		/**
+		 * Gives square i a value, keeping track of the mines the constraints
+		 * still need.
+		 * @return False if a constraint cannot be met anymore.
+		 */
+		private boolean set(int i, boolean mine) {
+			mines[i] = mine;
+			boolean ok = true;
+			for (int k : owners[i]) {
+				open[k] --;
+				if (mine) {
+					need[k] --;
+					counts[k] ++;
+				}
+				if (need[k] < 0 || need[k] > open[k]) {
+					ok = false;
+				}
+			}
+			if (mine) {
+				mineCount ++;
+				ok &= mineCount <= left;
+			}
+			return ok;
+		}
+
+		private void unset(int i) {
+			for (int k : owners[i]) {
+				open[k] ++;
+				if (mines[i]) {
+					need[k] ++;
+					counts[k] --;
+				}
+			}
+			if (mines[i]) {
+				mineCount --;
+			}
+			mines[i] = false;
+		}
+
+		/**
+		 * Resamples a block of squares.
+		 */
+		private void move() {
+			int size = mines.length;
+			if (size == 0) {
+				return;
+			}
+			// 1: pick the block: the squares nearest to one random square, or
+			// to two, so mines can also move between distant parts
+			stamp ++;
+			blockSize = 0;
+			int seeds = size > 1 && random.nextBoolean() ? 2 : 1;
+			for (int s = 0; s < seeds; s ++) {
+				grow(random.nextInt(size), blockSize + BLOCK / seeds);
+			}
+
+			// 2: the mines each constraint around it needs from the block
+			touchedSize = 0;
+			int before = 0;
+			for (int b = 0; b < blockSize; b ++) {
+				int i = block[b];
+				if (mines[i]) {
+					before ++;
+				}
+				for (int k : owners[i]) {
+					if (seen[k] != stamp) {
+						seen[k] = stamp;
+						touched[touchedSize ++] = k;
+						need[k] = targets[k] - counts[k];
+						open[k] = 0;
+					}
+					open[k] ++;
+					if (mines[i]) {
+						need[k] ++;
+					}
+				}
+			}
+
+			// 3: every way to fill it
+			wayCount = 0;
+			nodes = 0;
+			if ( ! fill(0, 0L, 0)) {
+				// too many: leave the block as it is
+				return;
+			}
+
+			// 4: pick one by its chance, which is the number of ways to place
+			// the rest of the mines on the other squares
+			double max = Double.NEGATIVE_INFINITY;
+			double[] weights = new double[wayCount];
+			for (int w = 0; w < wayCount; w ++) {
+				weights[w] = weight(mineCount - before + wayMines[w]);
+				max = Math.max(max, weights[w]);
+			}
+			if (max == Double.NEGATIVE_INFINITY) {
+				return;
+			}
+			double total = 0;
+			for (int w = 0; w < wayCount; w ++) {
+				weights[w] = Math.exp(weights[w] - max);
+				total += weights[w];
+			}
+			double r = random.nextDouble() * total;
+			int pick = 0;
+			while (pick < wayCount - 1 && (r -= weights[pick]) >= 0) {
+				pick ++;
+			}
+			long way = ways[pick];
+			for (int b = 0; b < blockSize; b ++) {
+				int i = block[b];
+				if (mines[i] != ((way >>> b & 1) != 0)) {
+					flip(i);
+				}
+			}
+		}
+
+		/**
+		 * Adds the squares nearest to a square to the block, by walking the
+		 * constraints, until the block is a given size.
+		 */
+		private void grow(int i, int limit) {
+			if (inBlock[i] == stamp) {
+				return;
+			}
+			int head = blockSize;
+			inBlock[i] = stamp;
+			block[blockSize ++] = i;
+			while (head < blockSize && blockSize < limit) {
+				int c = block[head ++];
+				for (int k : owners[c]) {
+					for (int j : members[k]) {
+						if (inBlock[j] != stamp && blockSize < limit) {
+							inBlock[j] = stamp;
+							block[blockSize ++] = j;
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Tries both values of the b-th square of the block and the squares
+		 * after it, backing off as soon as a constraint cannot be met.
+		 * @return False if there were too many ways.
+		 */
+		private boolean fill(int b, long way, int m) {
+			if (++ nodes > MAX_NODES) {
+				return false;
+			}
+			if (b == blockSize) {
+				if (wayCount == MAX_WAYS) {
+					return false;
+				}
+				ways[wayCount] = way;
+				wayMines[wayCount ++] = m;
+				return true;
+			}
+			int[] around = owners[block[b]];
+			for (int v = 0; v <= 1; v ++) {
+				boolean ok = true;
+				for (int k : around) {
+					open[k] --;
+					need[k] -= v;
+					if (need[k] < 0 || need[k] > open[k]) {
+						ok = false;
+					}
+				}
+				boolean done = ! ok || fill(b + 1, way | (long) v << b, m + v);
+				for (int k : around) {
+					open[k] ++;
+					need[k] += v;
+				}
+				if ( ! done) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void flip(int i) {
+			mines[i] = ! mines[i];
+			int d = mines[i] ? 1 : -1;
+			mineCount += d;
+			for (int k : owners[i]) {
+				counts[k] += d;
+			}
+			// count the time it was a mine
+			if (mines[i]) {
+				since[i] = time;
+			} else {
+				pending[i] += time - since[i];
+			}
+		}
+
+		/**
+		 * Adds what was seen since the last flush to the current batch.
+		 */
+		private void flush() {
+			double[] batch = batchHits[batches];
+			for (int i = 0; i < mines.length; i ++) {
+				if (mines[i]) {
+					pending[i] += time - since[i];
+					since[i] = time;
+				}
+				batch[i] += pending[i];
+				hits[i] += pending[i];
+				pending[i] = 0;
+			}
+			batch[mines.length] += otherPending;
+			otherSum += otherPending;
+			otherPending = 0;
+		}
+
+		private void nextBatch() {
+			batches ++;
+			if (batches == BATCHES) {
+				// out of batches: merge them in pairs and make them bigger
+				for (int b = 0; b < BATCHES / 2; b ++) {
+					double[] merged = batchHits[2 * b];
+					double[] other = batchHits[2 * b + 1];
+					for (int i = 0; i < merged.length; i ++) {
+						merged[i] += other[i];
+					}
+					batchHits[b] = merged;
+					batchSamples[b] = batchSamples[2 * b] + batchSamples[2 * b + 1];
+				}
+				for (int b = BATCHES / 2; b < BATCHES; b ++) {
+					batchHits[b] = new double[batchHits[0].length];
+					batchSamples[b] = 0;
+				}
+				batches = BATCHES / 2;
+				batchSize *= 2;
+			}
+		}
+
+		/**
+		 * The log of the number of ways to place the mines left among the
+		 * other squares, when the squares in the constraints hold m mines.
+		 */
+		private double weight(int m) {
+			int rest = left - m;
+			if (rest < 0 || rest > others) {
+				return Double.NEGATIVE_INFINITY;
+			}
+			return logFactorials[others] - logFactorials[rest]
+				- logFactorials[others - rest];
+		}
+	}
+}
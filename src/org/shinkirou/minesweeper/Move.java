@@ -0,0 +1,89 @@
+package org.shinkirou.minesweeper;
+
+/**
+ * A move chosen by {@link MinesweeperSolver#solve(long, long)}: a square to
+ * probe or mark, and whether it is proven or only a guess.
+ * @author SHiNKiROU
+ */
+public class Move {
+
+	private int cell;
+	private boolean mine;
+	private boolean proven;
+	private double probability;
+
+	/**
+	 * Constructs a move.
+	 * @param cell The cell id of the square.
+	 * @param mine True to mark the square, false to probe it.
+	 * @param proven True if the move is deduced, false if it is a guess.
+	 * @param probability The chance of the square being a mine.
+	 */
+	public Move(int cell, boolean mine, boolean proven, double probability) {
+		this.cell = cell;
+		this.mine = mine;
+		this.proven = proven;
+		this.probability = probability;
+	}
+
+	/**
+	 * Constructs a proven move from a deduction.
+	 * @param d The deduction.
+	 */
+	public Move(Deduction d) {
+		this(d.getCell(), d.isMine(), true, d.isMine() ? 1 : 0);
+	}
+
+	/**
+	 * Gets the square.
+	 * @return The cell id of the square.
+	 */
+	public int getCell() {
+		return cell;
+	}
+
+	/**
+	 * Checks if the square is to be marked.
+	 * @return True to mark the square, false to probe it.
+	 */
+	public boolean isMine() {
+		return mine;
+	}
+
+	/**
+	 * Checks if the move is deduced from the constraints, and so cannot
+	 * lose the game.
+	 * @return True if the move is proven, false if it is a guess.
+	 */
+	public boolean isProven() {
+		return proven;
+	}
+
+	/**
+	 * Gets the chance of the square being a mine. It is exact for proven
+	 * moves and estimated for guesses.
+	 * @return The chance, from 0 to 1.
+	 */
+	public double getProbability() {
+		return probability;
+	}
+
+	/**
+	 * Probes or marks the square on a board.
+	 * @param board The board.
+	 */
+	public void apply(Board board) {
+		if (mine) {
+			board.mark(cell);
+		} else {
+			board.probe(cell);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return (mine ? "Mark cell " : "Probe cell ") + cell
+			+ (proven ? " (proven)" : " (guess, "
+			+ Math.round(probability * 1000) / 10.0 + "% mine)");
+	}
+}
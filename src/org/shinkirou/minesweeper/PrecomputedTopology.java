@@ -0,0 +1,82 @@
+package org.shinkirou.minesweeper;
+
+/**
+ * A shape whose squares around each square are worked out once, when the
+ * topology is constructed, for shapes where that is cheaper than working
+ * them out again. They are kept in two flat arrays: the squares around
+ * square <code>i</code> are <code>neighbours[offsets[i]]</code> up to, but
+ * not including, <code>neighbours[offsets[i + 1]]</code>. That takes about
+ * four bytes per square and four per pair of squares next to each other.
+ * @author SHiNKiROU
+ */
+public abstract class PrecomputedTopology extends Topology {
+
+	private int[] offsets;
+	private int[] neighbours;
+
+	/**
+	 * Constructs a topology and works out the squares around every square.
+	 * @param width The width of the board, as an array size unit.
+	 * @param height The height of the board, as an array size unit.
+	 * @throws IllegalArgumentException If the size is not positive, or the
+	 * squares around every square do not fit in an array.
+	 */
+	protected PrecomputedTopology(int width, int height)
+			throws IllegalArgumentException {
+		super(width, height);
+		int size = width * height;
+		int[] around = new int[MAX_NEIGHBOURS];
+		offsets = new int[size + 1];
+		// 1: count the squares around each square
+		long total = 0;
+		for (int i = 0; i < size; i ++) {
+			total += around(i, around);
+			if (total >= Integer.MAX_VALUE) {
+				throw new IllegalArgumentException(
+					"Invalid board size: width=" + width + ", height="
+					+ height + ". There are too many squares to precompute"
+					+ " the squares around them.");
+			}
+			offsets[i + 1] = (int) total;
+		}
+		// 2: fill them in
+		neighbours = new int[offsets[size]];
+		for (int i = 0; i < size; i ++) {
+			int n = around(i, around);
+			System.arraycopy(around, 0, neighbours, offsets[i], n);
+		}
+	}
+
+	/**
+	 * Finds the squares around a square, when the topology is constructed.
+	 * @param x The X coordinate of the square, as an array index.
+	 * @param y The Y coordinate of the square, as an array index.
+	 * @param around Where to put the squares around it, as
+	 * <code>y * width + x</code>. It has room for
+	 * {@link Topology#MAX_NEIGHBOURS} of them.
+	 * @return The number of squares around it.
+	 */
+	protected abstract int neighbours(int x, int y, int[] around);
+
+	private int around(int i, int[] around) {
+		int width = getWidth();
+		return distinct(i, around, neighbours(i % width, i / width, around));
+	}
+
+	public int neighbours(int i, int[] around) {
+		int from = offsets[i];
+		int n = offsets[i + 1] - from;
+		System.arraycopy(neighbours, from, around, 0, n);
+		return n;
+	}
+
+	@Override
+	public boolean isNeighbour(int i, int j) {
+		for (int k = offsets[i]; k < offsets[i + 1]; k ++) {
+			if (neighbours[k] == j) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,122 @@
+package org.shinkirou.minesweeper;
+
+import java.util.Arrays;
+
+/**
+ * The estimated chance of each unknown square being a mine, as sampled by
+ * {@link MonteCarloSampler}, or worked out exactly, with no error, from the
+ * solutions of the frontier components when the solver has a
+ * {@link ComponentCache}.
+ * @author SHiNKiROU
+ */
+public class ProbabilityEstimate {
+
+	/**
+	 * The confidence level of the errors.
+	 */
+	public static final double CONFIDENCE = 0.95;
+
+	private int[] cells;
+	private double[] probabilities;
+	private double[] errors;
+	private int other;
+	private double otherProbability;
+	private double otherError;
+	private long samples;
+	private boolean exact;
+
+	ProbabilityEstimate(int[] cells, double[] probabilities,
+	                    double[] errors, int other,
+	                    double otherProbability, double otherError,
+	                    long samples, boolean exact) {
+		this.cells = cells;
+		this.probabilities = probabilities;
+		this.errors = errors;
+		this.other = other;
+		this.otherProbability = otherProbability;
+		this.otherError = otherError;
+		this.samples = samples;
+		this.exact = exact;
+	}
+
+	/**
+	 * Gets the estimated chance of a square being a mine. The squares that
+	 * are in no constraint all share the same chance.
+	 * @param c The cell id of the unknown square.
+	 * @return The chance, from 0 to 1.
+	 */
+	public double getProbability(int c) {
+		int i = Arrays.binarySearch(cells, c);
+		return i < 0 ? otherProbability : probabilities[i];
+	}
+
+	/**
+	 * Gets the half width of the {@link #CONFIDENCE} interval around the
+	 * estimated chance of a square being a mine.
+	 * @param c The cell id of the unknown square.
+	 * @return The error, or 1 if nothing is known about the square.
+	 */
+	public double getError(int c) {
+		int i = Arrays.binarySearch(cells, c);
+		return i < 0 ? otherError : errors[i];
+	}
+
+	/**
+	 * Gets the square which is the least likely to be a mine.
+	 * @return The cell id of the square, or -1 if there are no unknown
+	 * squares.
+	 */
+	public int getSafest() {
+		int best = other;
+		double p = other < 0 ? 2 : otherProbability;
+		for (int i = 0; i < cells.length; i ++) {
+			if (probabilities[i] < p) {
+				best = cells[i];
+				p = probabilities[i];
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Gets the squares which are in some constraint.
+	 * @return The cell ids of the squares, in ascending order.
+	 */
+	public int[] getCells() {
+		return cells.clone();
+	}
+
+	/**
+	 * Gets the number of mine configurations the estimate is based on: the
+	 * configurations sampled or, if it is exact, the solutions counted for
+	 * each frontier component, added up over the components.
+	 * @return The number of samples.
+	 */
+	public long getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Checks if the chances were worked out exactly instead of sampled.
+	 * @return True if they are exact.
+	 */
+	public boolean isExact() {
+		return exact;
+	}
+
+	@Override
+	public String toString() {
+		String buf = "";
+		for (int i = 0; i < cells.length; i ++) {
+			buf += "cell " + cells[i] + ": " + format(probabilities[i], errors[i]) + "\n";
+		}
+		buf += "others: " + format(otherProbability, otherError) + "\n";
+		buf += samples + " samples";
+		return buf;
+	}
+
+	private static String format(double p, double e) {
+		return Math.round(p * 1000) / 10.0 + "% +/- "
+			+ Math.round(e * 1000) / 10.0 + "%";
+	}
+}
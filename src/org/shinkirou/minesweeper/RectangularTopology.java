@@ -0,0 +1,56 @@
+package org.shinkirou.minesweeper;
+
+/**
+ * The usual rectangular board, where each square has up to 8 squares
+ * around it. They are worked out from the cell id as they are asked for.
+ * @author SHiNKiROU
+ */
+public class RectangularTopology extends Topology {
+
+	public RectangularTopology(int width, int height) {
+		super(width, height);
+	}
+
+	public int neighbours(int i, int[] around) {
+		int w = getWidth();
+		int x = i % w;
+		int y = i / w;
+		boolean left = x > 0;
+		boolean right = x < w - 1;
+		int n = 0;
+		if (y > 0) {
+			int above = i - w;
+			if (left) {
+				around[n ++] = above - 1;
+			}
+			around[n ++] = above;
+			if (right) {
+				around[n ++] = above + 1;
+			}
+		}
+		if (left) {
+			around[n ++] = i - 1;
+		}
+		if (right) {
+			around[n ++] = i + 1;
+		}
+		if (y < getHeight() - 1) {
+			int below = i + w;
+			if (left) {
+				around[n ++] = below - 1;
+			}
+			around[n ++] = below;
+			if (right) {
+				around[n ++] = below + 1;
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public boolean isNeighbour(int i, int j) {
+		int w = getWidth();
+		return i != j && Math.abs(i % w - j % w) <= 1
+			&& Math.abs(i / w - j / w) <= 1;
+	}
+}
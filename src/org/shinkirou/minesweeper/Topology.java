@@ -0,0 +1,108 @@
+package org.shinkirou.minesweeper;
+
+/**
+ * The shape of a board: which squares are around which. The squares of a
+ * <code>width</code> by <code>height</code> board are numbered
+ * <code>y * width + x</code>. Regular shapes work out the squares around a
+ * square as they are asked for, so they take no memory per square; shapes
+ * which are cheaper to look up extend {@link PrecomputedTopology}.
+ * @author SHiNKiROU
+ */
+public abstract class Topology {
+
+	/**
+	 * The most squares any square can have around it.
+	 */
+	public static final int MAX_NEIGHBOURS = 8;
+
+	private int width;
+	private int height;
+
+	/**
+	 * Constructs a topology.
+	 * @param width The width of the board, as an array size unit.
+	 * @param height The height of the board, as an array size unit.
+	 * @throws IllegalArgumentException If the size is not positive, or there
+	 * are too many squares to number with an <code>int</code>.
+	 */
+	protected Topology(int width, int height) throws IllegalArgumentException {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException(
+				"Invalid board size: width=" + width + ", height="
+				+ height + ". They must be greater than 0.");
+		}
+		// the arrays of a board are indexed by cell id, and one more
+		if ((long) width * height >= Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(
+				"Invalid board size: width=" + width + ", height="
+				+ height + ". There are too many squares.");
+		}
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Finds the squares around a square.
+	 * @param i The square, as <code>y * width + x</code>.
+	 * @param around Where to put the squares around it, as
+	 * <code>y * width + x</code>. It has room for {@link #MAX_NEIGHBOURS}
+	 * of them.
+	 * @return The number of squares around it.
+	 */
+	public abstract int neighbours(int i, int[] around);
+
+	/**
+	 * Checks if two squares are next to each other.
+	 * @param i A square, as <code>y * width + x</code>.
+	 * @param j Another square, as <code>y * width + x</code>.
+	 * @return True if <code>j</code> is around <code>i</code>.
+	 */
+	public boolean isNeighbour(int i, int j) {
+		int[] around = new int[MAX_NEIGHBOURS];
+		int n = neighbours(i, around);
+		for (int k = 0; k < n; k ++) {
+			if (around[k] == j) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes the squares found twice, and the square itself, from the
+	 * squares around a square, as small wrapped boards can reach them.
+	 * @param i The square.
+	 * @param around The squares around it.
+	 * @param n The number of squares around it.
+	 * @return The number of squares left.
+	 */
+	protected static int distinct(int i, int[] around, int n) {
+		int m = 0;
+		for (int j = 0; j < n; j ++) {
+			boolean seen = around[j] == i;
+			for (int k = 0; k < m && ! seen; k ++) {
+				seen = around[k] == around[j];
+			}
+			if ( ! seen) {
+				around[m ++] = around[j];
+			}
+		}
+		return m;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Gets the number of squares.
+	 * @return The number of squares.
+	 */
+	public int size() {
+		return width * height;
+	}
+}
@@ -0,0 +1,50 @@
+package org.shinkirou.minesweeper;
+
+/**
+ * A rectangular board whose edges wrap around: the left edge is next to the
+ * right edge and the top edge is next to the bottom edge, so every square
+ * has 8 squares around it, or fewer on boards less than 3 squares across.
+ * They are worked out from the cell id as they are asked for.
+ * @author SHiNKiROU
+ */
+public class TorusTopology extends Topology {
+
+	public TorusTopology(int width, int height) {
+		super(width, height);
+	}
+
+	public int neighbours(int i, int[] around) {
+		int w = getWidth();
+		int h = getHeight();
+		int x = i % w;
+		int y = i / w;
+		// the columns and rows either side, wrapped
+		int left = x == 0 ? w - 1 : x - 1;
+		int right = x == w - 1 ? 0 : x + 1;
+		int above = (y == 0 ? h - 1 : y - 1) * w;
+		int row = y * w;
+		int below = (y == h - 1 ? 0 : y + 1) * w;
+		around[0] = above + left;
+		around[1] = above + x;
+		around[2] = above + right;
+		around[3] = row + left;
+		around[4] = row + right;
+		around[5] = below + left;
+		around[6] = below + x;
+		around[7] = below + right;
+		if (w < 3 || h < 3) {
+			// small boards reach the same square twice
+			return distinct(i, around, 8);
+		}
+		return 8;
+	}
+
+	@Override
+	public boolean isNeighbour(int i, int j) {
+		int w = getWidth();
+		int h = getHeight();
+		int dx = Math.abs(i % w - j % w);
+		int dy = Math.abs(i / w - j / w);
+		return i != j && Math.min(dx, w - dx) <= 1 && Math.min(dy, h - dy) <= 1;
+	}
+}
@@ -0,0 +1,144 @@
+package org.shinkirou.minesweeper.analysis;
+
+/**
+ * How hard a board is, as measured by {@link DifficultyAnalyser}: how many
+ * clicks it takes to clear, how it is split into openings, and how much work
+ * the solver needs for it.
+ * @author SHiNKiROU
+ */
+public class Difficulty {
+
+	private long seed;
+	private int[] openings;
+	private int isolated;
+	private int iterations;
+	private int constraints;
+	private int guesses;
+	private boolean won;
+
+	Difficulty(long seed, int[] openings, int isolated) {
+		this.seed = seed;
+		this.openings = openings;
+		this.isolated = isolated;
+		// not played yet
+		this.iterations = -1;
+		this.constraints = -1;
+		this.guesses = -1;
+	}
+
+	void setEffort(int iterations, int constraints, int guesses, boolean won) {
+		this.iterations = iterations;
+		this.constraints = constraints;
+		this.guesses = guesses;
+		this.won = won;
+	}
+
+	/**
+	 * Gets the seed the board was made from.
+	 * @return The seed.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Gets the 3BV of the board: the fewest clicks needed to clear it, which
+	 * is one per opening and one per isolated number.
+	 * @return The 3BV.
+	 */
+	public int get3BV() {
+		return openings.length + isolated;
+	}
+
+	/**
+	 * Gets the number of openings: areas of empty squares which are cleared
+	 * by a single click.
+	 * @return The number of openings.
+	 */
+	public int getOpenings() {
+		return openings.length;
+	}
+
+	/**
+	 * Gets the size of each opening: the empty squares and the numbers
+	 * around them which are revealed by clicking it.
+	 * @return The sizes, in the order the openings are found, row by row.
+	 */
+	public int[] getOpeningSizes() {
+		return openings.clone();
+	}
+
+	/**
+	 * Gets the size of the biggest opening.
+	 * @return The size, or 0 if there are no openings.
+	 */
+	public int getLargestOpening() {
+		int max = 0;
+		for (int n : openings) {
+			max = Math.max(max, n);
+		}
+		return max;
+	}
+
+	/**
+	 * Gets the number of squares revealed by the openings. A number around
+	 * two openings is counted for both.
+	 * @return The number of squares.
+	 */
+	public int getOpeningSquares() {
+		int sum = 0;
+		for (int n : openings) {
+			sum += n;
+		}
+		return sum;
+	}
+
+	/**
+	 * Gets the number of isolated numbers: numbers with no empty square
+	 * around them, which each take a click of their own.
+	 * @return The number of isolated numbers.
+	 */
+	public int getIsolated() {
+		return isolated;
+	}
+
+	/**
+	 * Gets the number of solver iterations the game took.
+	 * @return The number of iterations, or -1 if the board was not played.
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Gets the number of constraints the solver found over the game.
+	 * @return The number of constraints, or -1 if the board was not played.
+	 */
+	public int getConstraints() {
+		return constraints;
+	}
+
+	/**
+	 * Gets the number of guesses the solver had to make.
+	 * @return The number of guesses, or -1 if the board was not played.
+	 */
+	public int getGuesses() {
+		return guesses;
+	}
+
+	/**
+	 * Checks if the solver cleared the board.
+	 * @return True if the board was solved.
+	 */
+	public boolean isWon() {
+		return won;
+	}
+
+	@Override
+	public String toString() {
+		return "3BV " + get3BV() + ", " + getOpenings() + " openings (largest "
+			+ getLargestOpening() + "), " + isolated + " isolated numbers, "
+			+ iterations + " iterations, " + constraints + " constraints, "
+			+ guesses + " guesses, " + (won ? "won" : "lost");
+	}
+}
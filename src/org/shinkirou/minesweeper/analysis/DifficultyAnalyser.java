@@ -0,0 +1,359 @@
+package org.shinkirou.minesweeper.analysis;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.shinkirou.minesweeper.Board;
+import org.shinkirou.minesweeper.ComponentCache;
+import org.shinkirou.minesweeper.MinesweeperSolver;
+import org.shinkirou.minesweeper.MonteCarloSampler;
+import org.shinkirou.minesweeper.RectangularTopology;
+import org.shinkirou.minesweeper.Topology;
+import org.shinkirou.util.UnionFind;
+
+/**
+ * Measures how hard boards are. The openings are found with a union-find
+ * over the empty squares, in a linear pass instead of a flood fill from
+ * each one, and the solver effort by letting the solver play the board.
+ * <p>
+ * As a program, it analyses seeded boards on all processors and writes one
+ * record per board to standard output, in the order of the seeds. The
+ * threads share a {@link ComponentCache}, so guesses are worked out exactly
+ * and a frontier component seen in one game is not solved again.
+ * Usage: <code>DifficultyAnalyser width height mines count [seed [threads
+ * [csv|binary]]]</code>
+ * @author SHiNKiROU
+ */
+public class DifficultyAnalyser {
+
+	// how many chain steps each guess is based on
+	private static final long GUESS_SAMPLES = 250;
+	// the longest a guess may take, in milliseconds; guesses that reach it
+	// depend on timing
+	private static final long GUESS_TIME = 1000;
+	// how many boards each task analyses
+	private static final int CHUNK = 256;
+	private static final int MAGIC = 0x4D534441; // "MSDA"
+
+	private DifficultyAnalyser() {
+	}
+
+	/**
+	 * Makes a board from a seed, probes its middle square and lets the
+	 * solver play it. Guesses are seeded from the same seed and take a fixed
+	 * number of sampler steps, so the result only depends on the arguments,
+	 * unless a guess takes longer than a second and is cut short.
+	 * @param topology The shape of the board.
+	 * @param mines The number of mines.
+	 * @param seed The seed.
+	 * @return The difficulty of the board.
+	 */
+	public static Difficulty analyse(Topology topology, int mines, long seed) {
+		return analyse(topology, mines, seed, null);
+	}
+
+	/**
+	 * Analyses a board as {@link #analyse(Topology, int, long)} does, but
+	 * works out the guesses exactly where the frontier allows, looking up
+	 * the components in a cache.
+	 * @param topology The shape of the board.
+	 * @param mines The number of mines.
+	 * @param seed The seed.
+	 * @param cache The solved components, or null to sample the guesses.
+	 * @return The difficulty of the board.
+	 */
+	public static Difficulty analyse(Topology topology, int mines, long seed,
+	                                 ComponentCache cache) {
+		Board board = new Board(topology, mines, seed);
+		// the first click is in the middle, as a player would
+		int width = topology.getWidth();
+		board.probe(width / 2, topology.getHeight() / 2);
+		byte[][] rows = board.getValues();
+		byte[] values = new byte[board.size()];
+		for (int y = 0; y < rows.length; y ++) {
+			System.arraycopy(rows[y], 0, values, y * width, width);
+		}
+		Difficulty d = measure(topology, values, seed);
+		play(board, seed, cache, d);
+		return d;
+	}
+
+	/**
+	 * Measures the 3BV, openings and isolated numbers of a board, without
+	 * playing it.
+	 * @param topology The shape of the board.
+	 * @param values The values under the squares, as <code>y * width +
+	 * x</code>: the number of mines around, or 9 for a mine.
+	 * @return The difficulty, without the solver effort.
+	 */
+	public static Difficulty measure(Topology topology, byte[] values) {
+		return measure(topology, values, 0);
+	}
+
+	private static Difficulty measure(Topology topology, byte[] values,
+	                                  long seed) {
+		int[] around = new int[Topology.MAX_NEIGHBOURS];
+		int size = values.length;
+
+		// 1: join each empty square to the empty squares around it which
+		// were seen before it; each area of them ends up a set
+		UnionFind areas = new UnionFind(size);
+		for (int i = 0; i < size; i ++) {
+			if (values[i] == 0) {
+				int count = topology.neighbours(i, around);
+				for (int k = 0; k < count; k ++) {
+					int j = around[k];
+					if (j < i && values[j] == 0) {
+						areas.union(i, j);
+					}
+				}
+			}
+		}
+
+		// 2: count the openings, and the numbers around each one
+		int[] roots = new int[size];
+		int openings = 0;
+		int isolated = 0;
+		int[] border = new int[size];
+		int[] near = new int[Topology.MAX_NEIGHBOURS];
+		for (int i = 0; i < size; i ++) {
+			byte v = values[i];
+			if (v == 0) {
+				if (areas.find(i) == i) {
+					roots[openings ++] = i;
+				}
+			} else if (v < 9) {
+				// the openings around it, each one once
+				int n = 0;
+				int count = topology.neighbours(i, around);
+				for (int k = 0; k < count; k ++) {
+					int j = around[k];
+					if (values[j] == 0) {
+						int root = areas.find(j);
+						int m = 0;
+						while (m < n && near[m] != root) {
+							m ++;
+						}
+						if (m == n) {
+							near[n ++] = root;
+							border[root] ++;
+						}
+					}
+				}
+				if (n == 0) {
+					// no opening reveals it: it takes a click of its own
+					isolated ++;
+				}
+			}
+		}
+		int[] sizes = new int[openings];
+		for (int k = 0; k < openings; k ++) {
+			sizes[k] = areas.size(roots[k]) + border[roots[k]];
+		}
+		return new Difficulty(seed, sizes, isolated);
+	}
+
+	private static void play(Board board, long seed, ComponentCache cache,
+	                         Difficulty d) {
+		MinesweeperSolver solver = new MinesweeperSolver(board);
+		solver.setCache(cache);
+		// the boards are analysed in parallel already
+		MonteCarloSampler sampler = solver.getSampler();
+		sampler.setThreads(1);
+		sampler.setSeed(seed);
+		sampler.setSampleBudget(GUESS_SAMPLES);
+		// a fixed number of steps, so the guesses do not depend on timing
+		// unless a frontier is too slow to sample
+		sampler.setTimeBudget(GUESS_TIME);
+
+		int constraints = 0;
+		int guesses = 0;
+		while ( ! board.isSolved() && ! board.isFailed()) {
+			int before = board.getModCount();
+			solver.iteration();
+			constraints += solver.getSets().size();
+			if (board.getModCount() != before || markRest(board)) {
+				continue;
+			}
+			// nothing left to deduce: guess
+			int c = solver.estimate().getSafest();
+			if (c < 0) {
+				break;
+			}
+			guesses ++;
+			board.probe(c);
+		}
+		d.setEffort(solver.getCount(), constraints, guesses, board.isSolved());
+	}
+
+	/**
+	 * Marks the unknown squares if they are all mines, which the constraints
+	 * alone cannot tell.
+	 * @return True if any squares were marked.
+	 */
+	private static boolean markRest(Board board) {
+		int left = board.getMines();
+		int unknown = 0;
+		for (int i = 0, size = board.size(); i < size; i ++) {
+			byte v = board.getInformation(i);
+			if (v == 9) {
+				left --;
+			} else if (v == 10) {
+				unknown ++;
+			}
+		}
+		if (unknown == 0 || unknown != left) {
+			return false;
+		}
+		for (int i = 0, size = board.size(); i < size; i ++) {
+			if (board.getInformation(i) == 10) {
+				board.mark(i);
+			}
+		}
+		return true;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int w = 0, h = 0, m = 0;
+		long count = 0, seed = 0;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean csv = true;
+		try {
+			if (args.length < 4) {
+				System.err.println("Usage: DifficultyAnalyser width height mines"
+					+ " count [seed [threads [csv|binary]]]");
+				System.exit(1);
+			}
+			w = Integer.parseInt(args[0]);
+			h = Integer.parseInt(args[1]);
+			m = Integer.parseInt(args[2]);
+			count = Long.parseLong(args[3]);
+			if (args.length >= 5) {
+				seed = Long.parseLong(args[4]);
+			}
+			if (args.length >= 6) {
+				threads = Integer.parseInt(args[5]);
+			}
+		} catch (NumberFormatException e) {
+			System.err.println("Error while parsing the numbers.");
+			System.exit(1);
+		}
+		if (args.length >= 7) {
+			if (args[6].equals("binary")) {
+				csv = false;
+			} else if ( ! args[6].equals("csv")) {
+				System.err.println("Error: unknown format " + args[6] + ".");
+				System.exit(1);
+			}
+		}
+		// the first click clears the square and the squares around it
+		if (w < 1 || h < 1 || m < 1 || threads < 1 || (long) w * h - 9 < m) {
+			System.err.println("Error: invalid arguments.");
+			System.exit(1);
+		}
+
+		final Topology topology = new RectangularTopology(w, h);
+		final int mines = m;
+		final ComponentCache cache = new ComponentCache();
+		Writer text = null;
+		DataOutputStream data = null;
+		if (csv) {
+			text = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+			text.write("seed,3bv,openings,opening_squares,largest_opening,"
+				+ "isolated,iterations,constraints,guesses,won\n");
+		} else {
+			data = new DataOutputStream(
+				new BufferedOutputStream(System.out, 1 << 16));
+			data.writeInt(MAGIC);
+			data.writeInt(w);
+			data.writeInt(h);
+			data.writeInt(m);
+		}
+
+		// keep a few chunks in flight per thread, and write them in order
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		LinkedList<Future<Difficulty[]>> pending =
+			new LinkedList<Future<Difficulty[]>>();
+		long next = 0;
+		try {
+			while (next < count || ! pending.isEmpty()) {
+				while (pending.size() < threads * 4 && next < count) {
+					final long first = seed + next;
+					final int n = (int) Math.min(CHUNK, count - next);
+					pending.addLast(pool.submit(new Callable<Difficulty[]>() {
+						public Difficulty[] call() {
+							Difficulty[] chunk = new Difficulty[n];
+							for (int k = 0; k < n; k ++) {
+								chunk[k] = analyse(topology, mines, first + k,
+									cache);
+							}
+							return chunk;
+						}
+					}));
+					next += n;
+				}
+				for (Difficulty d : pending.removeFirst().get()) {
+					if (csv) {
+						writeCsv(text, d);
+					} else {
+						writeBinary(data, d);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+			if (csv) {
+				text.flush();
+			} else {
+				data.flush();
+			}
+		}
+		long nanos = System.nanoTime() - start;
+		System.err.println(count + " boards in " + Math.round(nanos / 1e6)
+			+ " ms, " + Math.round(count * 1e9 / nanos) + " boards/s");
+		System.err.println("Component cache: " + cache);
+	}
+
+	private static void writeCsv(Writer out, Difficulty d) throws IOException {
+		StringBuilder buf = new StringBuilder(64);
+		buf.append(d.getSeed()).append(',')
+			.append(d.get3BV()).append(',')
+			.append(d.getOpenings()).append(',')
+			.append(d.getOpeningSquares()).append(',')
+			.append(d.getLargestOpening()).append(',')
+			.append(d.getIsolated()).append(',')
+			.append(d.getIterations()).append(',')
+			.append(d.getConstraints()).append(',')
+			.append(d.getGuesses()).append(',')
+			.append(d.isWon() ? 1 : 0).append('\n');
+		out.write(buf.toString());
+	}
+
+	private static void writeBinary(DataOutputStream out, Difficulty d)
+			throws IOException {
+		out.writeLong(d.getSeed());
+		out.writeInt(d.get3BV());
+		out.writeInt(d.getOpenings());
+		out.writeInt(d.getOpeningSquares());
+		out.writeInt(d.getLargestOpening());
+		out.writeInt(d.getIsolated());
+		out.writeInt(d.getIterations());
+		out.writeInt(d.getConstraints());
+		out.writeInt(d.getGuesses());
+		out.writeBoolean(d.isWon());
+	}
+}
@@ -0,0 +1,87 @@
+package org.shinkirou.minesweeper.benchmark;
+
+import java.util.Random;
+import org.shinkirou.minesweeper.HintCounter;
+import org.shinkirou.minesweeper.RectangularTopology;
+import org.shinkirou.minesweeper.Topology;
+
+/**
+ * Compares the row by row hint counting against the neighbour by neighbour
+ * loop, and checks that they agree.
+ * Usage: <code>HintBenchmark [width height mines [rounds]]</code>
+ * @author SHiNKiROU
+ */
+public class HintBenchmark {
+
+	private HintBenchmark() {
+	}
+
+	public static void main(String[] args) {
+		int w = 3000, h = 3000, m = 1800000, rounds = 10;
+		try {
+			if (args.length >= 3) {
+				w = Integer.parseInt(args[0]);
+				h = Integer.parseInt(args[1]);
+				m = Integer.parseInt(args[2]);
+			}
+			if (args.length >= 4) {
+				rounds = Integer.parseInt(args[3]);
+			}
+		} catch (NumberFormatException e) {
+			System.err.println("Error while parsing the numbers.");
+			System.exit(1);
+		}
+		if ((long) w * h < m) {
+			System.err.println("Error: too many mines.");
+			System.exit(1);
+		}
+
+		// place the mines once, both ways count the same board
+		byte[] mines = new byte[w * h];
+		Random r = new Random(0);
+		for (int n = 0; n < m; ) {
+			int i = r.nextInt(mines.length);
+			if (mines[i] != 9) {
+				mines[i] = 9;
+				n ++;
+			}
+		}
+		Topology t = new RectangularTopology(w, h);
+		byte[] rows = new byte[mines.length];
+		byte[] neighbours = new byte[mines.length];
+
+		long rowTime = Long.MAX_VALUE;
+		long neighbourTime = Long.MAX_VALUE;
+		for (int round = 0; round < rounds; round ++) {
+			System.arraycopy(mines, 0, neighbours, 0, mines.length);
+			long start = System.nanoTime();
+			HintCounter.countNeighbours(t, neighbours);
+			neighbourTime = Math.min(neighbourTime, System.nanoTime() - start);
+
+			System.arraycopy(mines, 0, rows, 0, mines.length);
+			start = System.nanoTime();
+			HintCounter.countRows(w, h, rows);
+			rowTime = Math.min(rowTime, System.nanoTime() - start);
+
+			for (int i = 0; i < mines.length; i ++) {
+				if (rows[i] != neighbours[i]) {
+					System.err.println("Mismatch at " + (i % w) + ", " + (i / w)
+						+ ": " + rows[i] + " != " + neighbours[i] + ".");
+					System.exit(1);
+				}
+			}
+		}
+
+		System.out.println(w + "x" + h + ", " + m + " mines, best of "
+			+ rounds + " rounds:");
+		System.out.println("  neighbours: " + report(neighbourTime, mines.length));
+		System.out.println("  rows:       " + report(rowTime, mines.length));
+		System.out.println("  speed-up:   "
+			+ Math.round(100.0 * neighbourTime / rowTime) / 100.0 + "x");
+	}
+
+	private static String report(long nanos, int cells) {
+		return Math.round(nanos / 1e4) / 100.0 + " ms, "
+			+ Math.round(cells * 1e3 / nanos * 10) / 10.0 + " Mcells/s";
+	}
+}
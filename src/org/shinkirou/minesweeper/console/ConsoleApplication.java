@@ -2,7 +2,10 @@ package org.shinkirou.minesweeper.console;
 
 import java.util.Scanner;
 import org.shinkirou.minesweeper.Board;
+import org.shinkirou.minesweeper.Deduction;
+import org.shinkirou.minesweeper.Deductions;
 import org.shinkirou.minesweeper.MinesweeperSolver;
+import org.shinkirou.minesweeper.Move;
 
 /**
  * The interactive command line Minesweeper Solver.
@@ -58,6 +61,30 @@ public class ConsoleApplication {
 				} else if (vals[0].equals("c")) {
 					// cheat
 					s.iteration();
+				} else if (vals[0].equals("n")) {
+					// play the next deduction only
+					Deductions d = s.deductions();
+					if (d.hasNext()) {
+						Deduction e = d.next();
+						System.err.println(b.getCoordinate(e.getCell())
+							+ (e.isMine() ? " is a mine" : " is safe")
+							+ " (found in " + d.getSteps() + " steps)");
+						e.apply(b);
+					} else {
+						System.err.println("Nothing left to deduce.");
+					}
+				} else if (vals[0].equals("s")) {
+					// the best move found in 100 milliseconds
+					Move e = s.solve(100);
+					if (e != null) {
+						System.err.println(b.getCoordinate(e.getCell()) + ": " + e);
+						e.apply(b);
+					}
+				} else if (vals[0].equals("g")) {
+					// guess
+					int c = s.guess();
+					System.err.println("Probing " + b.getX(c) + ", " + b.getY(c));
+					b.probe(c);
 				} else if (vals[0].equals("r")) {
 					// random
 					x = (int) (Math.random() * b.getWidth());
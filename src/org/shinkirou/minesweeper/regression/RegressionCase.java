@@ -0,0 +1,520 @@
+package org.shinkirou.minesweeper.regression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import org.shinkirou.minesweeper.Board;
+import org.shinkirou.minesweeper.Checkpoint;
+import org.shinkirou.minesweeper.ComponentCache;
+import org.shinkirou.minesweeper.Constraint;
+import org.shinkirou.minesweeper.Deduction;
+import org.shinkirou.minesweeper.Deductions;
+import org.shinkirou.minesweeper.HexagonalTopology;
+import org.shinkirou.minesweeper.MinesweeperSolver;
+import org.shinkirou.minesweeper.MonteCarloSampler;
+import org.shinkirou.minesweeper.Move;
+import org.shinkirou.minesweeper.ProbabilityEstimate;
+import org.shinkirou.minesweeper.RectangularTopology;
+import org.shinkirou.minesweeper.Topology;
+import org.shinkirou.minesweeper.TorusTopology;
+import org.shinkirou.minesweeper.analysis.Difficulty;
+import org.shinkirou.minesweeper.analysis.DifficultyAnalyser;
+
+/**
+ * A case of the regression corpus: a seeded board, what is done to it, and
+ * what should come out. A case is a line of the form
+ * <code>kind key=value ... =&gt; key=value ...</code>, where the part after
+ * the arrow is the expected outcome. The kinds are:
+ * <ul>
+ *   <li><b>probe:</b> plays the <code>moves</code> on the board, such as
+ *   <code>p15.8,m0.0,u0.0</code> to probe 15, 8 and mark and un-mark 0, 0.
+ *   <code>s</code> opens a snapshot, and <code>r1</code> and
+ *   <code>c1</code> roll back and commit the second snapshot opened. Cases
+ *   with snapshots also tell whether any are left open.</li>
+ *   <li><b>solve:</b> probes <code>start</code>, then runs solver
+ *   iterations until nothing more can be deduced.</li>
+ *   <li><b>deduce:</b> solves as <b>solve</b> does, stopping after
+ *   <code>iterations</code> iterations if given, then drains
+ *   {@link MinesweeperSolver#deductions()}: <code>match</code> tells
+ *   whether they are the squares the constraints of
+ *   {@link MinesweeperSolver#inspect()} make trivial, and
+ *   <code>wrong</code> counts the ones the board disagrees with.</li>
+ *   <li><b>checkpoint:</b> solves as <b>deduce</b> does, then saves a
+ *   {@link Checkpoint} and loads it: <code>same</code> tells whether the
+ *   loaded board and solver match the saved ones, and
+ *   <code>resumed</code> whether they still match once both are solved
+ *   until nothing more can be deduced.</li>
+ *   <li><b>move:</b> probes <code>start</code>, then plays the board with
+ *   {@link MinesweeperSolver#solve(long, long)}, at most
+ *   <code>steps</code> deduction steps a move: <code>wrong</code> counts
+ *   the proven moves the board disagrees with.</li>
+ *   <li><b>sample:</b> solves as <b>solve</b> does, then estimates the
+ *   chances of mines with <code>samples</code> samples and checks them
+ *   against the exact chances: <code>agree</code> tells whether every
+ *   square is within three times the stated error.</li>
+ *   <li><b>play:</b> lets the solver play the board, guesses and all, as
+ *   {@link DifficultyAnalyser#analyse} does.</li>
+ * </ul>
+ * Every case takes <code>shape</code> (rect, torus or hex),
+ * <code>size</code> (such as <code>30x16</code>), <code>mines</code> and
+ * <code>seed</code>.
+ * @author SHiNKiROU
+ */
+class RegressionCase {
+
+	private String kind;
+	private String input;
+	private Map<String, String> params;
+	private Map<String, String> expected;
+
+	private RegressionCase(String kind, String input,
+	                       Map<String, String> params,
+	                       Map<String, String> expected) {
+		this.kind = kind;
+		this.input = input;
+		this.params = params;
+		this.expected = expected;
+	}
+
+	/**
+	 * Parses a line of the corpus.
+	 * @param line The line, without comments.
+	 * @return The case.
+	 * @throws IllegalArgumentException If the line is not a valid case.
+	 */
+	static RegressionCase parse(String line) throws IllegalArgumentException {
+		String input = line;
+		String output = "";
+		int arrow = line.indexOf("=>");
+		if (arrow >= 0) {
+			input = line.substring(0, arrow).trim();
+			output = line.substring(arrow + 2).trim();
+		}
+		String[] words = input.split("\\s+");
+		String kind = words[0];
+		if ( ! kind.equals("probe") && ! kind.equals("solve")
+		    && ! kind.equals("play") && ! kind.equals("sample")
+		    && ! kind.equals("deduce") && ! kind.equals("checkpoint")
+		    && ! kind.equals("move")) {
+			throw new IllegalArgumentException("Unknown kind " + kind + ".");
+		}
+		Map<String, String> params = pairs(words, 1);
+		Map<String, String> expected = output.length() == 0
+			? new LinkedHashMap<String, String>()
+			: pairs(output.split("\\s+"), 0);
+		return new RegressionCase(kind, input, params, expected);
+	}
+
+	private static Map<String, String> pairs(String[] words, int from) {
+		Map<String, String> map = new LinkedHashMap<String, String>();
+		for (int i = from; i < words.length; i ++) {
+			int eq = words[i].indexOf('=');
+			if (eq < 1) {
+				throw new IllegalArgumentException(
+					"Expected key=value, got " + words[i] + ".");
+			}
+			map.put(words[i].substring(0, eq), words[i].substring(eq + 1));
+		}
+		return map;
+	}
+
+	String getKind() {
+		return kind;
+	}
+
+	/**
+	 * Tells whether the time of the case is checked against the baseline.
+	 * Sample cases take a fixed number of chain steps, which their
+	 * allocations already account for, and their CPU time varies too much
+	 * from run to run to check.
+	 * @return True if the time is checked.
+	 */
+	boolean isTimed() {
+		return ! kind.equals("sample");
+	}
+
+	/**
+	 * Gets the expected outcome.
+	 * @return The outcome, empty if none was recorded yet.
+	 */
+	Map<String, String> getExpected() {
+		return expected;
+	}
+
+	/**
+	 * Formats the case with an outcome, as a line of the corpus.
+	 * @param outcome The outcome.
+	 * @return The line.
+	 */
+	String format(Map<String, String> outcome) {
+		StringBuilder buf = new StringBuilder(input).append(" =>");
+		for (Map.Entry<String, String> e : outcome.entrySet()) {
+			buf.append(' ').append(e.getKey()).append('=').append(e.getValue());
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Runs the case.
+	 * @return The outcome.
+	 */
+	Map<String, String> run() {
+		Topology t = topology();
+		int mines = integer("mines");
+		long seed = Long.parseLong(param("seed"));
+		Map<String, String> outcome = new LinkedHashMap<String, String>();
+		if (kind.equals("play")) {
+			Difficulty d = DifficultyAnalyser.analyse(t, mines, seed);
+			outcome.put("3bv", String.valueOf(d.get3BV()));
+			outcome.put("openings", String.valueOf(d.getOpenings()));
+			outcome.put("iterations", String.valueOf(d.getIterations()));
+			outcome.put("constraints", String.valueOf(d.getConstraints()));
+			outcome.put("guesses", String.valueOf(d.getGuesses()));
+			outcome.put("result", d.isWon() ? "won" : "lost");
+			return outcome;
+		}
+
+		Board board = new Board(t, mines, seed);
+		boolean snapshots = false;
+		if (kind.equals("probe")) {
+			List<Integer> handles = new ArrayList<Integer>();
+			for (String move : param("moves").split(",")) {
+				if (move.equals("s")) {
+					handles.add(board.snapshot());
+					snapshots = true;
+					continue;
+				} else if (move.charAt(0) == 'r' || move.charAt(0) == 'c') {
+					int handle = handles.get(Integer.parseInt(move.substring(1)));
+					if (move.charAt(0) == 'r') {
+						board.rollback(handle);
+					} else {
+						board.commit(handle);
+					}
+					continue;
+				}
+				int dot = move.indexOf('.');
+				int x = Integer.parseInt(move.substring(1, dot));
+				int y = Integer.parseInt(move.substring(dot + 1));
+				switch (move.charAt(0)) {
+					case 'p':
+						board.probe(x, y);
+						break;
+					case 'm':
+						board.mark(x, y);
+						break;
+					case 'u':
+						board.unmark(x, y);
+						break;
+					default:
+						throw new IllegalArgumentException(
+							"Unknown move " + move + ".");
+				}
+			}
+		} else if (kind.equals("move")) {
+			start(board);
+			return move(board, outcome);
+		} else {
+			start(board);
+			MinesweeperSolver solver = new MinesweeperSolver(board);
+			// deduce and checkpoint cases may stop part way
+			int limit = params.containsKey("iterations")
+				? integer("iterations") : Integer.MAX_VALUE;
+			int constraints = solve(board, solver, limit);
+			if (kind.equals("sample")) {
+				return compare(board, solver, outcome);
+			} else if (kind.equals("deduce")) {
+				return deduce(board, solver, outcome);
+			} else if (kind.equals("checkpoint")) {
+				return checkpoint(board, solver, outcome);
+			}
+			outcome.put("iterations", String.valueOf(solver.getCount()));
+			outcome.put("constraints", String.valueOf(constraints));
+		}
+
+		// the state of every square
+		int probed = 0;
+		int marked = 0;
+		for (int i = 0; i < board.size(); i ++) {
+			switch (board.getValue(i)) {
+				case 1:
+					probed ++;
+					break;
+				case 2:
+					marked ++;
+					break;
+			}
+		}
+		outcome.put("probed", String.valueOf(probed));
+		outcome.put("marked", String.valueOf(marked));
+		outcome.put("crc", Long.toHexString(crc(board)));
+		outcome.put("result", board.isFailed() ? "failed"
+			: board.isSolved() ? "solved" : "open");
+		if (snapshots) {
+			// a board with a snapshot open cannot be saved
+			String open = "no";
+			try {
+				Checkpoint.save(new MinesweeperSolver(board),
+					new ByteArrayOutputStream());
+			} catch (IllegalStateException e) {
+				open = "yes";
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			outcome.put("snapshots", open);
+		}
+		return outcome;
+	}
+
+	private void start(Board board) {
+		String start = param("start");
+		int dot = start.indexOf('.');
+		board.probe(Integer.parseInt(start.substring(0, dot)),
+			Integer.parseInt(start.substring(dot + 1)));
+	}
+
+	/**
+	 * Runs solver iterations until nothing more can be deduced.
+	 * @param limit The most iterations the solver may have run.
+	 * @return The number of constraints found, over all the iterations.
+	 */
+	private static int solve(Board board, MinesweeperSolver solver,
+	                         int limit) {
+		int constraints = 0;
+		while ( ! board.isSolved() && ! board.isFailed()
+		       && solver.getCount() < limit) {
+			int before = board.getModCount();
+			solver.iteration();
+			constraints += solver.getSets().size();
+			if (board.getModCount() == before) {
+				break;
+			}
+		}
+		return constraints;
+	}
+
+	/**
+	 * Works out the CRC of what can be seen of every square.
+	 */
+	private static long crc(Board board) {
+		CRC32 crc = new CRC32();
+		for (int i = 0; i < board.size(); i ++) {
+			crc.update(board.getInformation(i));
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Checks the lazy deductions against the trivial constraints after a
+	 * full inspection.
+	 */
+	private Map<String, String> deduce(Board board, MinesweeperSolver solver,
+	                                   Map<String, String> outcome) {
+		if (board.isSolved() || board.isFailed()) {
+			outcome.put("result", board.isFailed() ? "failed" : "solved");
+			return outcome;
+		}
+		byte[] values = values(board);
+		Set<Deduction> lazy = new HashSet<Deduction>();
+		int safe = 0;
+		int wrong = 0;
+		Deductions d = solver.deductions();
+		while (d.hasNext()) {
+			Deduction e = d.next();
+			lazy.add(e);
+			safe += e.isMine() ? 0 : 1;
+			if (e.isMine() != (values[e.getCell()] == 9)) {
+				wrong ++;
+			}
+		}
+		solver.inspect();
+		Set<Deduction> trivial = new HashSet<Deduction>();
+		for (Constraint e : solver.getSets()) {
+			if (e.getMines() == 0 || e.getMines() == e.size()) {
+				for (int c : e.getCells()) {
+					trivial.add(new Deduction(c, e.getMines() > 0));
+				}
+			}
+		}
+		outcome.put("safe", String.valueOf(safe));
+		outcome.put("mines", String.valueOf(lazy.size() - safe));
+		outcome.put("steps", String.valueOf(d.getSteps()));
+		outcome.put("match", lazy.equals(trivial) ? "yes" : "no");
+		outcome.put("wrong", String.valueOf(wrong));
+		return outcome;
+	}
+
+	/**
+	 * Saves the solver to a checkpoint and loads it again.
+	 */
+	private Map<String, String> checkpoint(Board board,
+	                                       MinesweeperSolver solver,
+	                                       Map<String, String> outcome) {
+		MinesweeperSolver loaded;
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		try {
+			Checkpoint.save(solver, buf);
+			loaded = Checkpoint.load(new ByteArrayInputStream(
+				buf.toByteArray()));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		Board copy = loaded.getBoard();
+		int[] frontier = board.getFrontier();
+		int[] other = copy.getFrontier();
+		Arrays.sort(frontier);
+		Arrays.sort(other);
+		boolean same = crc(board) == crc(copy)
+			&& Arrays.equals(values(board), values(copy))
+			&& solver.getSets().equals(loaded.getSets())
+			&& solver.getCount() == loaded.getCount()
+			&& Arrays.equals(frontier, other);
+		outcome.put("iterations", String.valueOf(solver.getCount()));
+		solve(board, solver, Integer.MAX_VALUE);
+		solve(copy, loaded, Integer.MAX_VALUE);
+		boolean resumed = crc(board) == crc(copy)
+			&& solver.getSets().equals(loaded.getSets())
+			&& solver.getCount() == loaded.getCount();
+		outcome.put("frontier", String.valueOf(frontier.length));
+		outcome.put("bytes", String.valueOf(buf.size()));
+		outcome.put("same", same ? "yes" : "no");
+		outcome.put("resumed", resumed ? "yes" : "no");
+		return outcome;
+	}
+
+	/**
+	 * Plays the board a move at a time, checking the proven moves.
+	 */
+	private Map<String, String> move(Board board,
+	                                 Map<String, String> outcome) {
+		byte[] values = values(board);
+		MinesweeperSolver solver = new MinesweeperSolver(board);
+		// a fixed number of chain steps, so the guesses do not depend on
+		// timing; the time limit is never reached
+		MonteCarloSampler sampler = solver.getSampler();
+		sampler.setThreads(1);
+		sampler.setSeed(Long.parseLong(param("seed")));
+		sampler.setSampleBudget(250);
+		sampler.setTimeBudget(60000);
+		long steps = Long.parseLong(param("steps"));
+		int moves = 0;
+		int proven = 0;
+		int wrong = 0;
+		while ( ! board.isSolved() && ! board.isFailed()) {
+			Move m = solver.solve(60000, steps);
+			if (m == null) {
+				break;
+			}
+			moves ++;
+			if (m.isProven()) {
+				proven ++;
+				if (m.isMine() != (values[m.getCell()] == 9)) {
+					wrong ++;
+				}
+			}
+			int before = board.getModCount();
+			m.apply(board);
+			if (board.getModCount() == before) {
+				// a move which changes nothing would be chosen again
+				break;
+			}
+		}
+		outcome.put("moves", String.valueOf(moves));
+		outcome.put("proven", String.valueOf(proven));
+		outcome.put("wrong", String.valueOf(wrong));
+		outcome.put("result", board.isFailed() ? "lost"
+			: board.isSolved() ? "won" : "stuck");
+		return outcome;
+	}
+
+	/**
+	 * Gets the values under the squares, by cell id.
+	 */
+	private static byte[] values(Board board) {
+		byte[][] rows = board.getValues();
+		int width = board.getWidth();
+		byte[] values = new byte[board.size()];
+		for (int y = 0; y < rows.length; y ++) {
+			System.arraycopy(rows[y], 0, values, y * width, width);
+		}
+		return values;
+	}
+
+	/**
+	 * Checks the sampled chances of mines against the exact ones.
+	 */
+	private Map<String, String> compare(Board board, MinesweeperSolver solver,
+	                                    Map<String, String> outcome) {
+		if (board.isSolved() || board.isFailed()) {
+			outcome.put("result", board.isFailed() ? "failed" : "solved");
+			return outcome;
+		}
+		solver.setCache(new ComponentCache());
+		ProbabilityEstimate exact = solver.estimate();
+		if ( ! exact.isExact()) {
+			outcome.put("result", "too big");
+			return outcome;
+		}
+		solver.setCache(null);
+		MonteCarloSampler sampler = solver.getSampler();
+		sampler.setThreads(1);
+		sampler.setSeed(Long.parseLong(param("seed")));
+		sampler.setSampleBudget(Long.parseLong(param("samples")));
+		sampler.setTimeBudget(60000);
+		ProbabilityEstimate p = solver.estimate();
+		int cells = 0;
+		boolean agree = true;
+		for (int i = 0; i < board.size(); i ++) {
+			if (board.getInformation(i) == 10) {
+				cells ++;
+				double d = Math.abs(p.getProbability(i) - exact.getProbability(i));
+				// an error of 0 still leaves room for rounding
+				agree &= d <= 3 * p.getError(i) + 1e-9;
+			}
+		}
+		outcome.put("cells", String.valueOf(cells));
+		outcome.put("samples", String.valueOf(p.getSamples()));
+		outcome.put("agree", agree ? "yes" : "no");
+		return outcome;
+	}
+
+	private Topology topology() {
+		String size = param("size");
+		int x = size.indexOf('x');
+		int w = Integer.parseInt(size.substring(0, x));
+		int h = Integer.parseInt(size.substring(x + 1));
+		String shape = param("shape");
+		if (shape.equals("rect")) {
+			return new RectangularTopology(w, h);
+		} else if (shape.equals("torus")) {
+			return new TorusTopology(w, h);
+		} else if (shape.equals("hex")) {
+			return new HexagonalTopology(w, h);
+		}
+		throw new IllegalArgumentException("Unknown shape " + shape + ".");
+	}
+
+	private String param(String key) {
+		String value = params.get(key);
+		if (value == null) {
+			throw new IllegalArgumentException("Missing " + key + ".");
+		}
+		return value;
+	}
+
+	private int integer(String key) {
+		return Integer.parseInt(param(key));
+	}
+
+	@Override
+	public String toString() {
+		return input;
+	}
+}
@@ -0,0 +1,270 @@
+package org.shinkirou.minesweeper.regression;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Runs the regression corpus: first checks that every case still comes out
+ * as recorded, then times each kind of case and counts what it allocates,
+ * and fails if either is more than the baseline plus a margin. The time is
+ * the CPU time of the thread, where the JVM can tell, so other processes on
+ * the machine do not count. A kind whose time is over is measured again a
+ * couple of times before it fails, since a busy machine still slows a
+ * thread down now and then, while a slower build stays slow. The time of
+ * kinds which are not timed (see {@link RegressionCase#isTimed()}) is not
+ * checked or recorded.
+ * <p>
+ * The margin is the system property <code>regression.margin</code>, a
+ * fraction of the baseline, 0.5 by default. Allocations are only counted
+ * on JVMs which can count them per thread.
+ * <p>
+ * Usage: <code>RegressionHarness [-record] corpus baselines</code>. With
+ * <code>-record</code>, the outcomes are written back into the corpus and
+ * the measurements into the baselines instead of being checked.
+ * @author SHiNKiROU
+ */
+public class RegressionHarness {
+
+	// rounds run before measuring, and rounds measured
+	private static final int WARM_UP = 5;
+	private static final int ROUNDS = 10;
+	// times a kind is measured again before its time counts as exceeded
+	private static final int RETRIES = 2;
+
+	// counts the bytes allocated by a thread, where the JVM can
+	private static Method allocatedBytes;
+	static {
+		try {
+			allocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+				.getMethod("getThreadAllocatedBytes", long.class);
+		} catch (Exception e) {
+			allocatedBytes = null;
+		}
+	}
+
+	private RegressionHarness() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean record = args.length == 3 && args[0].equals("-record");
+		if (args.length != (record ? 3 : 2)) {
+			System.err.println(
+				"Usage: RegressionHarness [-record] corpus baselines");
+			System.exit(2);
+		}
+		File corpus = new File(args[record ? 1 : 0]);
+		File baselines = new File(args[record ? 2 : 1]);
+		double margin = Double.parseDouble(
+			System.getProperty("regression.margin", "0.5"));
+
+		// 1: read the corpus, keeping the comments for recording
+		List<String> lines = new ArrayList<String>();
+		List<RegressionCase> cases = new ArrayList<RegressionCase>();
+		BufferedReader in = new BufferedReader(new FileReader(corpus));
+		try {
+			int n = 0;
+			for (String line; (line = in.readLine()) != null; ) {
+				n ++;
+				lines.add(line);
+				String text = line.trim();
+				if (text.length() == 0 || text.startsWith("#")) {
+					cases.add(null);
+					continue;
+				}
+				try {
+					cases.add(RegressionCase.parse(text));
+				} catch (IllegalArgumentException e) {
+					System.err.println(corpus + ":" + n + ": " + e.getMessage());
+					System.exit(2);
+				}
+			}
+		} finally {
+			in.close();
+		}
+
+		// 2: correctness
+		int failures = 0;
+		for (int i = 0; i < cases.size(); i ++) {
+			RegressionCase c = cases.get(i);
+			if (c == null) {
+				continue;
+			}
+			Map<String, String> outcome = c.run();
+			if (record) {
+				lines.set(i, c.format(outcome));
+			} else if ( ! outcome.equals(c.getExpected())) {
+				failures ++;
+				System.err.println("FAIL line " + (i + 1) + ": " + c);
+				System.err.println("  expected " + c.getExpected());
+				System.err.println("  got      " + outcome);
+			}
+		}
+		if (failures > 0) {
+			System.err.println(failures + " cases failed.");
+			System.exit(1);
+		}
+		System.out.println("All cases passed.");
+
+		// 3: performance, a kind at a time
+		Map<String, List<RegressionCase>> kinds =
+			new LinkedHashMap<String, List<RegressionCase>>();
+		for (RegressionCase c : cases) {
+			if (c != null) {
+				if ( ! kinds.containsKey(c.getKind())) {
+					kinds.put(c.getKind(), new ArrayList<RegressionCase>());
+				}
+				kinds.get(c.getKind()).add(c);
+			}
+		}
+		Properties base = new Properties();
+		if (baselines.exists()) {
+			InputStream bin = new FileInputStream(baselines);
+			try {
+				base.load(bin);
+			} finally {
+				bin.close();
+			}
+		}
+		Properties measured = new Properties();
+		int exceeded = 0;
+		for (Map.Entry<String, List<RegressionCase>> e : kinds.entrySet()) {
+			String kind = e.getKey();
+			boolean timed = e.getValue().get(0).isTimed();
+			long[] m = measure(e.getValue());
+			if (timed && ! record) {
+				long limit = limit(kind + ".nanos", base, margin);
+				for (int r = 0; r < RETRIES && m[0] > limit; r ++) {
+					m[0] = Math.min(m[0], measure(e.getValue())[0]);
+				}
+			}
+			if (timed) {
+				measured.setProperty(kind + ".nanos", String.valueOf(m[0]));
+			}
+			if (m[1] >= 0) {
+				measured.setProperty(kind + ".bytes", String.valueOf(m[1]));
+			}
+			if ( ! record) {
+				if (timed) {
+					exceeded += compare(kind + ".nanos", m[0], base, margin);
+				}
+				if (m[1] >= 0) {
+					exceeded += compare(kind + ".bytes", m[1], base, margin);
+				}
+			}
+		}
+
+		if (record) {
+			PrintWriter out = new PrintWriter(new FileWriter(corpus));
+			try {
+				for (String line : lines) {
+					out.println(line);
+				}
+			} finally {
+				out.close();
+			}
+			OutputStream bout = new FileOutputStream(baselines);
+			try {
+				measured.store(bout, "Regression baselines: best of " + ROUNDS
+					+ " rounds of each kind of case");
+			} finally {
+				bout.close();
+			}
+			System.out.println("Recorded " + corpus + " and " + baselines + ".");
+		} else if (exceeded > 0) {
+			System.err.println(exceeded + " baselines exceeded by more than "
+				+ Math.round(margin * 100) + "%.");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs the cases a few times.
+	 * @return The shortest time of a round in nanoseconds, and the fewest
+	 * bytes allocated by a round, or -1 if they cannot be counted.
+	 */
+	private static long[] measure(List<RegressionCase> cases) {
+		for (int r = 0; r < WARM_UP; r ++) {
+			for (RegressionCase c : cases) {
+				c.run();
+			}
+		}
+		long nanos = Long.MAX_VALUE;
+		long bytes = Long.MAX_VALUE;
+		for (int r = 0; r < ROUNDS; r ++) {
+			long allocated = allocated();
+			long start = time();
+			for (RegressionCase c : cases) {
+				c.run();
+			}
+			nanos = Math.min(nanos, time() - start);
+			bytes = Math.min(bytes, allocated() - allocated);
+		}
+		return new long[] {nanos, allocated() < 0 ? -1 : bytes};
+	}
+
+	private static int compare(String key, long value, Properties base,
+	                           double margin) {
+		String s = base.getProperty(key);
+		if (s == null) {
+			System.out.println(key + ": " + value + " (no baseline)");
+			return 0;
+		}
+		long baseline = Long.parseLong(s);
+		boolean ok = value <= limit(key, base, margin);
+		System.out.println(key + ": " + value + ", baseline " + baseline
+			+ (baseline > 0 ? " (" + Math.round(100.0 * value / baseline)
+				+ "%)" : "") + (ok ? "" : " EXCEEDED"));
+		return ok ? 0 : 1;
+	}
+
+	/**
+	 * Gets the most a measurement may be.
+	 * @return The baseline plus the margin, or the largest long if there is
+	 * no baseline.
+	 */
+	private static long limit(String key, Properties base, double margin) {
+		String s = base.getProperty(key);
+		return s == null ? Long.MAX_VALUE
+			: (long) (Long.parseLong(s) * (1 + margin));
+	}
+
+	private static long time() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		return bean.isCurrentThreadCpuTimeSupported()
+			? bean.getCurrentThreadCpuTime() : System.nanoTime();
+	}
+
+	/**
+	 * Gets the bytes allocated by this thread so far, where the JVM can
+	 * tell.
+	 * @return The bytes, or -1.
+	 */
+	private static long allocated() {
+		if (allocatedBytes == null) {
+			return -1;
+		}
+		try {
+			return (Long) allocatedBytes.invoke(
+				ManagementFactory.getThreadMXBean(),
+				Thread.currentThread().getId());
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,400 @@
+package org.shinkirou.minesweeper.simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits a range of seeds into shards and hands them out to worker
+ * processes over sockets, merging the statistics they send back. The
+ * workers can be started by the coordinator on the same machine, or
+ * started by hand on other machines with the port it listens on.
+ * <p>
+ * A shard only counts once its worker has finished it. If a worker dies or
+ * goes quiet for longer than the timeout, its shard goes back in the queue
+ * for another worker, and local workers which die are replaced. Workers
+ * send a heartbeat a few times per timeout, besides their statistics, so
+ * a slow game does not count as going quiet.
+ * <p>
+ * Usage: <code>Coordinator width height mines count [first [workers
+ * [shardSize [port [timeout]]]]]</code>. With a port, the coordinator
+ * listens on every interface; otherwise, or with port 0, only local
+ * workers can connect. The timeout is in milliseconds.
+ * @author SHiNKiROU
+ */
+public class Coordinator {
+
+	// how long a worker may go quiet by default before it is taken as dead
+	private static final int TIMEOUT = 60000;
+	// how many heartbeats a worker sends per timeout
+	private static final int HEARTBEATS = 4;
+	// how many dead local workers are replaced, at most
+	private static final int RESTARTS = 8;
+
+	private int timeout;
+
+	private int width;
+	private int height;
+	private int mines;
+	private BlockingQueue<Shard> queue;
+	private int shards;
+	private long games;
+
+	// guarded by this
+	private int remaining;
+	private long played;
+	private int connected;
+	private int running;
+	private int restarts;
+	private Statistics total;
+
+	private ServerSocket server;
+
+	/**
+	 * Constructs a coordinator for a range of seeds.
+	 * @param width The width of the boards.
+	 * @param height The height of the boards.
+	 * @param mines The number of mines.
+	 * @param first The first seed.
+	 * @param count The number of seeds.
+	 * @param shardSize The most seeds in a shard.
+	 */
+	public Coordinator(int width, int height, int mines, long first,
+	                   long count, int shardSize) {
+		if (shardSize < 1) {
+			throw new IllegalArgumentException(
+				"Invalid shard size: " + shardSize + ".");
+		}
+		this.width = width;
+		this.height = height;
+		this.mines = mines;
+		this.queue = new LinkedBlockingQueue<Shard>();
+		for (long k = 0; k < count; k += shardSize) {
+			int n = (int) Math.min(shardSize, count - k);
+			queue.add(new Shard(shards ++, first + k, n));
+		}
+		this.games = count;
+		this.remaining = shards;
+		this.total = new Statistics();
+		this.timeout = TIMEOUT;
+	}
+
+	/**
+	 * Gets how long a worker may go without sending anything before it is
+	 * taken as dead.
+	 * @return The time in milliseconds.
+	 */
+	public int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets how long a worker may go without sending anything before it is
+	 * taken as dead. The workers send a heartbeat {@value #HEARTBEATS} times
+	 * in that time.
+	 * @param timeout The time in milliseconds.
+	 */
+	public void setTimeout(int timeout) {
+		if (timeout < HEARTBEATS) {
+			throw new IllegalArgumentException(
+				"Invalid timeout: " + timeout + ".");
+		}
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Plays all the shards.
+	 * @param workers The number of local workers to start.
+	 * @param port The port to listen on, or 0 to pick a free one and only
+	 * accept local workers.
+	 * @return The statistics of all the games.
+	 * @throws IOException If the coordinator cannot listen, or all the
+	 * workers died and none can be started again.
+	 */
+	public Statistics run(int workers, int port)
+			throws IOException, InterruptedException {
+		server = port == 0
+			? new ServerSocket(0, 50, InetAddress.getByName(null))
+			: new ServerSocket(port);
+		System.err.println("Listening on port " + server.getLocalPort() + ".");
+		try {
+			Thread acceptor = new Thread(new Runnable() {
+				public void run() {
+					accept();
+				}
+			}, "acceptor");
+			acceptor.setDaemon(true);
+			acceptor.start();
+			for (int i = 0; i < workers; i ++) {
+				spawn();
+			}
+
+			synchronized (this) {
+				while (remaining > 0) {
+					if (workers > 0 && running == 0 && connected == 0
+					    && restarts >= RESTARTS) {
+						throw new IOException("All workers died, "
+							+ remaining + " shards left.");
+					}
+					wait(1000);
+				}
+				// let the workers hear that they can stop
+				while (connected > 0) {
+					wait(1000);
+				}
+				return total;
+			}
+		} finally {
+			server.close();
+		}
+	}
+
+	private void accept() {
+		while ( ! server.isClosed()) {
+			final Socket socket;
+			try {
+				socket = server.accept();
+			} catch (IOException e) {
+				// closed
+				return;
+			}
+			synchronized (this) {
+				connected ++;
+			}
+			Thread handler = new Thread(new Runnable() {
+				public void run() {
+					serve(socket);
+				}
+			}, "worker " + socket.getRemoteSocketAddress());
+			handler.setDaemon(true);
+			handler.start();
+		}
+	}
+
+	/**
+	 * Hands out shards to a worker until there are none left or the worker
+	 * fails.
+	 */
+	private void serve(Socket socket) {
+		Shard shard = null;
+		try {
+			socket.setSoTimeout(timeout);
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(
+				new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(socket.getOutputStream()));
+			out.writeByte(Worker.CONFIG);
+			out.writeInt(width);
+			out.writeInt(height);
+			out.writeInt(mines);
+			out.writeInt(timeout / HEARTBEATS);
+			while ((shard = next()) != null) {
+				out.writeByte(Worker.SHARD);
+				out.writeInt(shard.getId());
+				out.writeLong(shard.getFirst());
+				out.writeInt(shard.getCount());
+				out.flush();
+
+				// keep the shard to itself until it is done
+				Statistics done = new Statistics();
+				int type;
+				do {
+					type = in.readByte();
+					if (type == Worker.HEARTBEAT) {
+						// still playing
+						continue;
+					}
+					int id = in.readInt();
+					Statistics part = Statistics.read(in);
+					if (id != shard.getId()
+					    || (type != Worker.PROGRESS && type != Worker.DONE)) {
+						throw new IOException("Unexpected message " + type
+							+ " about shard " + id + ".");
+					}
+					done.merge(part);
+				} while (type != Worker.DONE);
+				if (done.getGames() != shard.getCount()) {
+					throw new IOException("Played " + done.getGames()
+						+ " games of " + shard + ".");
+				}
+				finish(shard, done);
+				shard = null;
+			}
+			out.writeByte(Worker.STOP);
+			out.flush();
+		} catch (IOException e) {
+			System.err.println("Worker " + socket.getRemoteSocketAddress()
+				+ " failed: " + e);
+		} finally {
+			if (shard != null) {
+				// another worker plays it from the start
+				System.err.println("Reassigning " + shard + ".");
+				queue.add(shard);
+			}
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// already gone
+			}
+			synchronized (this) {
+				connected --;
+				notifyAll();
+			}
+		}
+	}
+
+	private Shard next() {
+		try {
+			while (true) {
+				synchronized (this) {
+					if (remaining == 0) {
+						return null;
+					}
+				}
+				// a failed shard can come back at any time
+				Shard shard = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (shard != null) {
+					return shard;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	private synchronized void finish(Shard shard, Statistics done) {
+		total.merge(done);
+		played += shard.getCount();
+		remaining --;
+		System.err.println("Finished " + shard + ", " + played + " of "
+			+ games + " games.");
+		notifyAll();
+	}
+
+	/**
+	 * Starts a local worker, and starts another one if it dies while there
+	 * are shards left.
+	 */
+	private void spawn() throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin"
+			+ File.separator + "java";
+		String host = server.getInetAddress().isAnyLocalAddress()
+			? "localhost" : server.getInetAddress().getHostAddress();
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+			System.getProperty("java.class.path"), Worker.class.getName(),
+			host, String.valueOf(server.getLocalPort()));
+		builder.redirectErrorStream(true);
+		final Process process = builder.start();
+		synchronized (this) {
+			running ++;
+		}
+		Thread watcher = new Thread(new Runnable() {
+			public void run() {
+				watch(process);
+			}
+		}, "process");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	private void watch(Process process) {
+		// pass on what the worker prints, so its pipe never fills up
+		InputStream in = process.getInputStream();
+		byte[] buf = new byte[4096];
+		int code;
+		try {
+			for (int n; (n = in.read(buf)) > 0; ) {
+				System.err.write(buf, 0, n);
+			}
+			code = process.waitFor();
+		} catch (IOException e) {
+			code = -1;
+		} catch (InterruptedException e) {
+			process.destroy();
+			return;
+		}
+		boolean replace;
+		synchronized (this) {
+			running --;
+			replace = remaining > 0 && restarts < RESTARTS;
+			if (replace) {
+				restarts ++;
+			}
+			notifyAll();
+		}
+		if (replace) {
+			System.err.println("Worker exited with " + code
+				+ ", starting another one.");
+			try {
+				spawn();
+			} catch (IOException e) {
+				System.err.println("Cannot start a worker: " + e.getMessage());
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int w = 0, h = 0, m = 0, shardSize = 1000, port = 0;
+		int timeout = TIMEOUT;
+		long count = 0, first = 0;
+		int workers = Runtime.getRuntime().availableProcessors();
+		try {
+			if (args.length < 4) {
+				System.err.println("Usage: Coordinator width height mines count"
+					+ " [first [workers [shardSize [port [timeout]]]]]");
+				System.exit(1);
+			}
+			w = Integer.parseInt(args[0]);
+			h = Integer.parseInt(args[1]);
+			m = Integer.parseInt(args[2]);
+			count = Long.parseLong(args[3]);
+			if (args.length >= 5) {
+				first = Long.parseLong(args[4]);
+			}
+			if (args.length >= 6) {
+				workers = Integer.parseInt(args[5]);
+			}
+			if (args.length >= 7) {
+				shardSize = Integer.parseInt(args[6]);
+			}
+			if (args.length >= 8) {
+				port = Integer.parseInt(args[7]);
+			}
+			if (args.length >= 9) {
+				timeout = Integer.parseInt(args[8]);
+			}
+		} catch (NumberFormatException e) {
+			System.err.println("Error while parsing the numbers.");
+			System.exit(1);
+		}
+		// the first click clears the square and the squares around it
+		if (w < 1 || h < 1 || m < 1 || (long) w * h - 9 < m || count < 0
+		    || workers < 0 || shardSize < 1 || (workers == 0 && port == 0)
+		    || timeout < HEARTBEATS) {
+			System.err.println("Error: invalid arguments.");
+			System.exit(1);
+		}
+
+		long start = System.nanoTime();
+		Coordinator coordinator = new Coordinator(w, h, m, first, count,
+			shardSize);
+		coordinator.setTimeout(timeout);
+		Statistics s = coordinator.run(workers, port);
+		long nanos = System.nanoTime() - start;
+		System.out.println(s);
+		System.out.println(Math.round(nanos / 1e6) + " ms, "
+			+ Math.round(s.getGames() * 1e9 / nanos) + " games/s");
+	}
+}
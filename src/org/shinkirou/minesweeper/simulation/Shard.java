@@ -0,0 +1,45 @@
+package org.shinkirou.minesweeper.simulation;
+
+/**
+ * A range of seeds, played as a unit by one worker. If the worker dies,
+ * the whole shard is played again by another one.
+ * @author SHiNKiROU
+ */
+public class Shard {
+
+	private int id;
+	private long first;
+	private int count;
+
+	public Shard(int id, long first, int count) {
+		this.id = id;
+		this.first = first;
+		this.count = count;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the first seed of the shard.
+	 * @return The seed.
+	 */
+	public long getFirst() {
+		return first;
+	}
+
+	/**
+	 * Gets the number of seeds, which follow the first one.
+	 * @return The number of seeds.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		return "shard " + id + " (seeds " + first + " to "
+			+ (first + count - 1) + ")";
+	}
+}
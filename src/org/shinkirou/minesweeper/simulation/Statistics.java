@@ -0,0 +1,124 @@
+package org.shinkirou.minesweeper.simulation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import org.shinkirou.minesweeper.analysis.Difficulty;
+
+/**
+ * Sums over a number of games played by the solver. They are small and
+ * fixed in size, so workers can send them often, and statistics of any
+ * games can be merged by adding them up.
+ * @author SHiNKiROU
+ */
+public class Statistics {
+
+	private long games;
+	private long won;
+	private long guesses;
+	private long iterations;
+	private long constraints;
+	private long threeBV;
+	private long nanos;
+
+	/**
+	 * Adds a game to the statistics.
+	 * @param d The difficulty of the game, as it was played.
+	 * @param nanos How long the game took, in nanoseconds.
+	 */
+	public void add(Difficulty d, long nanos) {
+		games ++;
+		if (d.isWon()) {
+			won ++;
+		}
+		guesses += d.getGuesses();
+		iterations += d.getIterations();
+		constraints += d.getConstraints();
+		threeBV += d.get3BV();
+		this.nanos += nanos;
+	}
+
+	/**
+	 * Adds other statistics to these ones.
+	 * @param s The other statistics.
+	 */
+	public void merge(Statistics s) {
+		games += s.games;
+		won += s.won;
+		guesses += s.guesses;
+		iterations += s.iterations;
+		constraints += s.constraints;
+		threeBV += s.threeBV;
+		nanos += s.nanos;
+	}
+
+	public void write(DataOutput out) throws IOException {
+		out.writeLong(games);
+		out.writeLong(won);
+		out.writeLong(guesses);
+		out.writeLong(iterations);
+		out.writeLong(constraints);
+		out.writeLong(threeBV);
+		out.writeLong(nanos);
+	}
+
+	public static Statistics read(DataInput in) throws IOException {
+		Statistics s = new Statistics();
+		s.games = in.readLong();
+		s.won = in.readLong();
+		s.guesses = in.readLong();
+		s.iterations = in.readLong();
+		s.constraints = in.readLong();
+		s.threeBV = in.readLong();
+		s.nanos = in.readLong();
+		return s;
+	}
+
+	public long getGames() {
+		return games;
+	}
+
+	public long getWon() {
+		return won;
+	}
+
+	public long getGuesses() {
+		return guesses;
+	}
+
+	public long getIterations() {
+		return iterations;
+	}
+
+	public long getConstraints() {
+		return constraints;
+	}
+
+	/**
+	 * Gets the sum of the 3BV of the boards.
+	 * @return The sum.
+	 */
+	public long get3BV() {
+		return threeBV;
+	}
+
+	/**
+	 * Gets the time spent playing, summed over the workers.
+	 * @return The time in nanoseconds.
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	@Override
+	public String toString() {
+		double n = Math.max(1, games);
+		return games + " games, " + won + " won ("
+			+ Math.round(won * 1000 / n) / 10.0 + "%), "
+			+ Math.round(guesses * 100 / n) / 100.0 + " guesses, "
+			+ Math.round(iterations * 100 / n) / 100.0 + " iterations, "
+			+ Math.round(constraints * 10 / n) / 10.0 + " constraints, 3BV "
+			+ Math.round(threeBV * 10 / n) / 10.0 + " per game, "
+			+ Math.round(nanos / n / 1e4) / 100.0 + " ms per game";
+	}
+}
@@ -0,0 +1,149 @@
+package org.shinkirou.minesweeper.simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import org.shinkirou.minesweeper.ComponentCache;
+import org.shinkirou.minesweeper.RectangularTopology;
+import org.shinkirou.minesweeper.Topology;
+import org.shinkirou.minesweeper.analysis.Difficulty;
+import org.shinkirou.minesweeper.analysis.DifficultyAnalyser;
+
+/**
+ * Plays the shards a {@link Coordinator} hands out, and sends back the
+ * statistics of the games as it goes. It runs until the coordinator tells
+ * it to stop or goes away. The games share a {@link ComponentCache} for
+ * as long as the worker runs.
+ * <p>
+ * Between the statistics, a separate thread sends a heartbeat as often as
+ * the coordinator asks, so a game on a large board, which can take longer
+ * than the coordinator waits, does not make it look dead.
+ * Usage: <code>Worker host port</code>
+ * @author SHiNKiROU
+ */
+public class Worker {
+
+	// messages from the coordinator
+	static final int CONFIG = 1;
+	static final int SHARD = 2;
+	static final int STOP = 3;
+	// messages to the coordinator
+	static final int PROGRESS = 4;
+	static final int DONE = 5;
+	static final int HEARTBEAT = 6;
+
+	// how many games are played between two progress messages
+	static final int REPORT = 64;
+
+	private Worker() {
+	}
+
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.err.println("Usage: Worker host port");
+			System.exit(1);
+		}
+		try {
+			Socket socket = new Socket(args[0], Integer.parseInt(args[1]));
+			try {
+				socket.setTcpNoDelay(true);
+				run(new DataInputStream(new BufferedInputStream(
+						socket.getInputStream())),
+					new DataOutputStream(new BufferedOutputStream(
+						socket.getOutputStream())));
+			} finally {
+				socket.close();
+			}
+		} catch (NumberFormatException e) {
+			System.err.println("Error while parsing the port.");
+			System.exit(1);
+		} catch (IOException e) {
+			System.err.println("Worker failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static void run(DataInputStream in, final DataOutputStream out)
+			throws IOException {
+		if (in.readByte() != CONFIG) {
+			throw new IOException("Expected the game settings.");
+		}
+		Topology topology = new RectangularTopology(in.readInt(), in.readInt());
+		int mines = in.readInt();
+		final int interval = in.readInt();
+		if (interval < 1) {
+			throw new IOException("Invalid heartbeat interval " + interval + ".");
+		}
+		Thread heart = new Thread(new Runnable() {
+			public void run() {
+				beat(out, interval);
+			}
+		}, "heartbeat");
+		heart.setDaemon(true);
+		heart.start();
+		try {
+			ComponentCache cache = new ComponentCache();
+			while (true) {
+				int type = in.readByte();
+				if (type == STOP) {
+					System.err.println("Component cache: " + cache);
+					return;
+				} else if (type != SHARD) {
+					throw new IOException("Unknown message " + type + ".");
+				}
+				Shard shard = new Shard(in.readInt(), in.readLong(),
+					in.readInt());
+				play(shard, topology, mines, cache, out);
+			}
+		} finally {
+			heart.interrupt();
+		}
+	}
+
+	/**
+	 * Sends a heartbeat every so often, until interrupted or the coordinator
+	 * goes away.
+	 */
+	private static void beat(DataOutputStream out, int interval) {
+		try {
+			while (true) {
+				Thread.sleep(interval);
+				// not in the middle of the statistics
+				synchronized (out) {
+					out.writeByte(HEARTBEAT);
+					out.flush();
+				}
+			}
+		} catch (InterruptedException e) {
+			// the worker is stopping
+		} catch (IOException e) {
+			// the coordinator is gone, which the games find out too
+		}
+	}
+
+	private static void play(Shard shard, Topology topology, int mines,
+	                         ComponentCache cache, DataOutputStream out)
+			throws IOException {
+		Statistics part = new Statistics();
+		for (int k = 0; k < shard.getCount(); k ++) {
+			long start = System.nanoTime();
+			Difficulty d = DifficultyAnalyser.analyse(topology, mines,
+				shard.getFirst() + k, cache);
+			part.add(d, System.nanoTime() - start);
+			boolean last = k == shard.getCount() - 1;
+			if (last || (k + 1) % REPORT == 0) {
+				// only send what was played since the last message
+				synchronized (out) {
+					out.writeByte(last ? DONE : PROGRESS);
+					out.writeInt(shard.getId());
+					part.write(out);
+					out.flush();
+				}
+				part = new Statistics();
+			}
+		}
+	}
+}
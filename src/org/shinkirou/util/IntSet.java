@@ -0,0 +1,112 @@
+package org.shinkirou.util;
+
+/**
+ * A set of non-negative <code>int</code>s, stored without boxing in an open
+ * addressing hash table.
+ * @author SHiNKiROU
+ */
+public class IntSet {
+
+	private static final int FREE = -1;
+
+	private int[] table;
+	private int size;
+	// 32 minus the number of bits of a slot index
+	private int shift;
+
+	public IntSet() {
+		this(16);
+	}
+
+	public IntSet(int initialCap) {
+		int cap = 16;
+		while (cap < initialCap * 2) {
+			cap *= 2;
+		}
+		table = new int[cap];
+		shift = 32 - Integer.numberOfTrailingZeros(cap);
+		clear();
+	}
+
+	/**
+	 * Adds a number to the set.
+	 * @param n The number, at least 0.
+	 * @return True if it was not in the set yet.
+	 */
+	public boolean add(int n) {
+		if (n < 0) {
+			throw new IllegalArgumentException("Negative number: " + n + ".");
+		}
+		int i = find(n);
+		if (table[i] == n) {
+			return false;
+		}
+		table[i] = n;
+		size ++;
+		if (size * 2 > table.length) {
+			grow();
+		}
+		return true;
+	}
+
+	public boolean contains(int n) {
+		return n >= 0 && table[find(n)] == n;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		for (int i = 0; i < table.length; i ++) {
+			table[i] = FREE;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Gets the numbers in the set, in no particular order.
+	 * @return A new array of the numbers.
+	 */
+	public int[] toArray() {
+		int[] a = new int[size];
+		int k = 0;
+		for (int n : table) {
+			if (n != FREE) {
+				a[k ++] = n;
+			}
+		}
+		return a;
+	}
+
+	/**
+	 * Finds the slot that holds a number, or the free slot it would go to.
+	 */
+	private int find(int n) {
+		int mask = table.length - 1;
+		// Fibonacci hashing: the top bits of the product are well mixed
+		int i = (n * 0x9E3779B9) >>> shift;
+		while (table[i] != FREE && table[i] != n) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	private void grow() {
+		int[] old = table;
+		table = new int[old.length * 2];
+		shift --;
+		for (int i = 0; i < table.length; i ++) {
+			table[i] = FREE;
+		}
+		for (int n : old) {
+			if (n != FREE) {
+				table[find(n)] = n;
+			}
+		}
+	}
+}
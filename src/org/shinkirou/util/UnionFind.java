@@ -0,0 +1,86 @@
+package org.shinkirou.util;
+
+/**
+ * Disjoint sets of the numbers from 0 to n - 1, which can be joined
+ * together. Uses union by size and path halving, so any sequence of
+ * operations takes nearly linear time.
+ * @author SHiNKiROU
+ */
+public class UnionFind {
+
+	// the parent of each number, or itself if it is a root
+	private int[] parent;
+	// the size of the set of each root
+	private int[] size;
+	private int count;
+
+	/**
+	 * Constructs the sets, each number in a set of its own.
+	 * @param n How many numbers there are.
+	 */
+	public UnionFind(int n) {
+		parent = new int[n];
+		size = new int[n];
+		for (int i = 0; i < n; i ++) {
+			parent[i] = i;
+			size[i] = 1;
+		}
+		count = n;
+	}
+
+	/**
+	 * Finds the root of the set of a number. Two numbers are in the same
+	 * set if they have the same root.
+	 * @param i The number.
+	 * @return The root.
+	 */
+	public int find(int i) {
+		while (parent[i] != i) {
+			// point to the grandparent as we go
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Joins the sets of two numbers.
+	 * @param a A number.
+	 * @param b Another number.
+	 * @return True if they were in different sets.
+	 */
+	public boolean union(int a, int b) {
+		a = find(a);
+		b = find(b);
+		if (a == b) {
+			return false;
+		}
+		// hang the smaller tree under the bigger one
+		if (size[a] < size[b]) {
+			int t = a;
+			a = b;
+			b = t;
+		}
+		parent[b] = a;
+		size[a] += size[b];
+		count --;
+		return true;
+	}
+
+	/**
+	 * Gets the size of the set of a number.
+	 * @param i The number.
+	 * @return How many numbers are in its set.
+	 */
+	public int size(int i) {
+		return size[find(i)];
+	}
+
+	/**
+	 * Gets the number of sets.
+	 * @return The number of sets.
+	 */
+	public int count() {
+		return count;
+	}
+}